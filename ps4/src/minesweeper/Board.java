@@ -3,13 +3,29 @@
  */
 package minesweeper;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Map;
-import java.util.HashMap;
-import java.util.Map.Entry;
+import java.util.Arrays;
+import java.util.Optional;
 import java.util.Set;
-import java.util.HashSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 /**
  * A mutable Minesweeper board with a specified width and height where each tile
@@ -23,109 +39,207 @@ import java.util.HashSet;
  * a tile in a flagged state, and change its state to untouched state.
  */
 public class Board {
+
+    // Layout of a packed tile, one byte per tile:
+    // bits 0-3 number of bombs in the neighborhood of the tile (0 to 8)
+    // bit 4 set if the tile has a bomb under it
+    // bits 5-6 state of the tile, one of UNTOUCHED, FLAGGED or DUG
+    private static final int BOMB_COUNT_MASK = 0x0F;
+    private static final int BOMB = 0x10;
+    private static final int STATE_MASK = 0x60;
+    private static final int UNTOUCHED = 0x00;
+    private static final int FLAGGED = 0x20;
+    private static final int DUG = 0x40;
+
+    // Boards with at least this many tiles label their empty regions in parallel
+    private static final int PARALLEL_LABELING_TILES = 1 << 22;
+
+    // Number of rows guarded by each lock of bandLocks
+    private static final int BAND_ROWS = 16;
+
+    // Atomic access to the packed tiles of tiles
+    private static final VarHandle TILE = MethodHandles.arrayElementVarHandle(byte[].class);
+
+    // Number of optimistic attempts to copy the tiles before holding every band
+    private static final int OPTIMISTIC_READS = 8;
+
+    // Largest number of tile changes remembered by the journal of a board
+    private static final int MAX_JOURNAL = 1 << 16;
+
     // fields
     private final int width;
     private final int height;
-    private final Set<Integer> tilesContainingBombs;
-    private final Map<Integer, Tile> tiles;
-    private final Set<Integer> tilesContainingFlags;
+    private final byte[] tiles;
+    private final byte[] display;
+    private final int[] journal;
+    private final AtomicLong journalTail;
+    private final AtomicInteger reportingThreads;
+    private final ThreadLocal<ChangeReport> changeReports;
+    private final ReentrantLock[] bandLocks;
+    private final AtomicLongArray bandWrites;
+    private final AtomicReference<Snapshot> lastSnapshot;
+    private final ConcurrentLinkedQueue<Reveal> idleReveals;
+    private volatile RevealStrategy revealStrategy;
+    private volatile boolean lockFree;
+    private final int wordsPerRow;
+    private long[] untouchedBits;
+    private long[] emptyBits;
+    private long[] regionBits;
+    private long[] rowScratch;
+    private int[] regionParent;
+    private int[] regionNext;
 
     // Abstraction function
-    // AF(sizeX, sizeY, tiles, flags, bombs): A Minesweeper board of width SizeX and
-    // height SizeY containing SizeX * SizeY tiles. Every tile in the tiles
-    // collection is on the board. Tiles in the bombs collection have a bomb
-    // underneath them, and those in the flags collection have a flag on them.
+    // AF(width, height, tiles): A Minesweeper board of width width and height
+    // height containing width * height tiles. The tile at (x,y) is packed in
+    // tiles[y * width + x], its state bits tell whether it is untouched, flagged
+    // or dug, its bomb bit tells whether it has a bomb underneath it, and its
+    // bomb count bits hold the number of bombs in its neighborhood. Digs reveal
+    // the neighborhood of a tile with the algorithm revealStrategy, and single
+    // tile operations skip the band locks if lockFree. journalTail counts the
+    // changes of tiles, it is the version of the board, and journal remembers
+    // which tiles the last changes were made to. display, bandLocks, bandWrites,
+    // lastSnapshot, idleReveals, reportingThreads, changeReports, the bitboards
+    // and the region labels are only there to use the board concurrently and
+    // fast, they are not part of the abstract value.
 
     // Representation invariant
-    // 1. A Board of SizeX and SizeY should contain SizeX * SizeY unique tiles.
+    // 1. tiles.length == width * height.
     // 2. If a tile is at (x,y) position on the board then its tile number should be
-    // x * SizeX + y.
-    // 3. An untouched tile may contain a bomb under it or have a flag on it.
-    // 4. A dug tile will not have a flag and bomb on it.
-    // 5. If a tile has bombCount bombs in its neighborhood then it must have
-    // exactly bombCount bombs in its neighborhood.
+    // y * width + x.
+    // 3. The state bits of every tile are exactly one of UNTOUCHED, FLAGGED, DUG.
+    // 4. An untouched tile may contain a bomb under it or have a flag on it.
+    // 5. A dug tile will not have a flag and bomb on it.
+    // 6. The bomb count of every tile is exactly the number of tiles in its
+    // neighborhood whose bomb bit is set.
+    // 7. bandLocks has one lock for every BAND_ROWS rows, the last band may be
+    // shorter.
+    // 8. untouchedBits, emptyBits, regionBits and rowScratch are non null exactly
+    // when revealStrategy is BITBOARD, untouchedBits and emptyBits then mark the
+    // untouched and the empty tiles, and regionBits is all clear between digs.
+    // 9. regionParent and regionNext are non null exactly when revealStrategy is
+    // REGION_LABELS, two empty tiles are then in the same region if and only if
+    // they are connected through empty tiles.
+    // 10. The Reveals in idleReveals hold no band and have no tile collected.
+    // 11. lockFree is false when revealStrategy is BITBOARD.
+    // 12. bandWrites holds two counters for every band, the number of changes of
+    // its tiles started at 2 * band and finished at 2 * band + 1. They are equal
+    // when no change of the band is in progress.
+    // 13. lastSnapshot holds null or the snapshot of this board with the greatest
+    // version taken so far.
+    // 14. display holds the string representation of the board in ASCII, the
+    // symbol of the tile with row major index i is display[2 * i] and every row
+    // but the last ends with a newline, whenever no change is in progress.
+    // 15. journal.length is a power of two. Whenever no change is in progress,
+    // journalTail is the number of tiles changed since the board was created, and
+    // for the last journal.length of those changes, change number p was made to
+    // the tile with row major index journal[p % journal.length].
+    // 16. reportingThreads is the number of threads whose ChangeReport is open, a
+    // ChangeReport is only open during an operation that reports its changes.
 
     // Safety from representation exposure
-    // 1. All the fields are private and final.
+    // 1. All the fields are private, width, height, tiles, display, journal,
+    // journalTail, reportingThreads, changeReports, bandLocks, bandWrites,
+    // lastSnapshot, idleReveals and wordsPerRow are final. revealStrategy is an immutable enum value and
+    // lockFree is a boolean.
     // 2. All the observers, creators, and mutators don't reveal internal
-    // representation to the client.
+    // representation to the client, tiles are only handed out as coordinates.
+    // snapshot hands out lastSnapshot, which is immutable, renderTo copies
+    // display into the buffer of the client, and changesSince copies from journal
+    // and display into a new immutable Delta. The operations that report their
+    // changes only add new coordinates to the list of the client.
 
     // Thread safety argument
-    // 1. All the fields are private and final.
-    // 2. digAt method is a synchronized method, only one user will be able to dig
-    // on any tile at a given time by acquiring the lock associated with the
-    // board instance.
-    // 3. addFlag & removeFlag methods will acquire the lock associated with the
-    // tile instance. Thus, multiple users can add flag to or remove flag from tiles
-    // at different locations but only one user will be able to add flag to or
-    // remove flag from the same tile.
-    // 4. All the access to tilesContainingFlags happen inside addFlag & removeFlag
-    // method and it is guarded by the tiles lock. Thus, multiple users can
-    // access tilesContiningFlags but each method is dealing with a different tile
-    // 5. All the access to tilesContainingBombs happen inside digAt methods and it
-    // is guarded by the board's lock. Thus, only one user will be able to access it
-    // at a time.
-    // 6. Observers like getDugTiles, getFlaggedTiles, getTilesWithBomb,
-    // toString, and hashCode & hashCode are synchronized methods and only one user
-    // will be able to observer the current status of the board at a time.
-    // 7. Observers like isUntouched, containsBomb, and isFlagged deal with a single
-    // tile and all the access are guarded by the tile's lock. Thus, multiple users
-    // can check the status of different tiles concurrently only one user will be
-    // able to check the status of a the same tile at a time.
+    // 1. width, height, wordsPerRow, tiles, display, journal, journalTail,
+    // reportingThreads, changeReports, bandLocks, bandWrites, lastSnapshot and
+    // idleReveals are final, width, height and wordsPerRow are immutable.
+    // 2. The rows of the board are split into bands of BAND_ROWS rows, each
+    // guarded by its own lock of bandLocks. A tile, and the words of untouchedBits
+    // and emptyBits covering it, are only read or written holding the lock of the
+    // band of its row, except by the optimistic reads of point 4. addFlagAt,
+    // removeFlagFrom, isUntouched, containsBomb and isFlagged hold the band of
+    // their tile, setRevealStrategy and setLockFree hold every band, and digAt
+    // holds the bands of the rows its reveal reads or changes. digAll, addFlags,
+    // removeFlags and chordAt hold every band around all their operations, which
+    // take the ReentrantLocks of their bands again without waiting.
+    // 3. Tiles are only changed by compare-and-set through TILE. If lockFree, the
+    // single tile operations, and digs that reveal nothing, change the state bits
+    // of a tile without holding its band: they read the tile through TILE and
+    // only change it if it did not change since. The bomb bits and bomb counts are
+    // still only changed holding the bands, so a dig that holds a band only sees
+    // the states of its tiles change, and it only digs the tiles that are still
+    // untouched when it gets to them.
+    // 4. Every change of tiles is surrounded by beginWrite and endWrite on the
+    // bands of the changed tiles, which count the changes started and finished in
+    // bandWrites. snapshot reads the tiles without holding any band while no
+    // change is in progress, and only keeps what it read if no change started in
+    // the meantime, so it never blocks a writer. After OPTIMISTIC_READS failed
+    // attempts it reads the tiles holding every band, which may still miss some
+    // lock free flags placed or removed while it reads. getDugTiles,
+    // getFlaggedTiles, getTilesWithBomb, toString, equals and hashCode answer from
+    // a snapshot. lastSnapshot is only replaced by compare-and-set with a snapshot
+    // of a greater version, so the threads that take a snapshot of the same
+    // version share one Snapshot, and its render. Snapshots are immutable apart
+    // from that render, which is made once by a FutureTask. display is changed
+    // with its tiles, between the same beginWrite and endWrite, and renderTo
+    // copies it with the same optimistic reads as snapshot, restricted to the
+    // bands of the rows it copies. In lock free mode a
+    // thread that changes a tile keeps writing its symbol until the tile stops
+    // changing, so the last symbol written is the one of the last change. Every
+    // change of a tile also takes the next slot of journal from journalTail, an
+    // atomic counter, between the same beginWrite and endWrite, and changesSince
+    // reads journal with the optimistic reads of snapshot.
+    // 5. regionBits, rowScratch, regionParent and regionNext are only used, and the
+    // bitboard and label fields only assigned, holding every band. untouchedBits is
+    // only used when lockFree is false, so all the changes of tile states hold a
+    // band.
+    // 6. revealStrategy and lockFree are volatile and only assigned holding every
+    // band, so a dig that holds a band sees the same values until it releases it.
+    // 7. A thread only waits for a band after all the bands it holds, bands before
+    // them are taken with tryLock, so no two threads ever wait for each other.
+    // 8. A Reveal is only used by the dig that took it from idleReveals, a thread
+    // safe queue, until it puts it back.
+    // 9. equals compares snapshots of the boards and never holds the bands of two
+    // boards at once.
+    // 10. Every ChangeReport is confined to its thread by changeReports, a thread
+    // only records the changes it makes itself into its own report.
+    // 11. Threads only ever block waiting for the ReentrantLocks of bandLocks,
+    // never in synchronized blocks, so a virtual thread waiting for a band leaves
+    // its carrier thread free for other virtual threads.
 
     // Constructor
     public Board(int width, int height) {
-	this.width = width;
-	this.height = height;
-	this.tilesContainingBombs = new HashSet<>();
-	this.tiles = new HashMap<>();
-	this.tilesContainingFlags = new HashSet<>();
-	for (int positionX = 0; positionX < width; positionX++) {
-	    for (int positionY = 0; positionY < height; positionY++) {
-		Integer tileNumber = convertTo1DPosition(positionX, positionY);
-		if (Math.random() == 0.25) {
-		    tilesContainingBombs.add(tileNumber);
-		    tiles.put(tileNumber, new Tile(positionX, positionY, true, false, false, true, 0));
-		} else {
-		    tiles.put(tileNumber, new Tile(positionX, positionY, true, false, false, false, 0));
-		}
+	this(width, height, new byte[width * height]);
+	for (int tileNumber = 0; tileNumber < tiles.length; tileNumber++) {
+	    if (Math.random() == 0.25) {
+		tiles[tileNumber] = BOMB;
 	    }
 	}
 
-	for (Integer tileNumber : tilesContainingBombs) {
-	    List<Integer> bombCoordinates = convertTo2DPosition(tileNumber);
-	    increaseBombCountOfNeighbor(bombCoordinates.get(0), bombCoordinates.get(1));
-	}
+	countBombs();
+	drawDisplay();
     }
 
     public Board(int width, int height, Set<List<Integer>> tilesContainingBombs) {
+	this(width, height, new byte[width * height]);
 	System.out.println("width: " + width + " height:" + height);
-	this.width = width;
-	this.height = height;
-	this.tiles = new HashMap<>();
-	this.tilesContainingBombs = new HashSet<>();
-	this.tilesContainingFlags = new HashSet<>();
-
-	for (int positionX = 0; positionX < width; positionX++) {
-	    for (int positionY = 0; positionY < height; positionY++) {
-		List<Integer> tileCoordinate = List.of(positionX, positionY);
-		Integer tileNumber = convertTo1DPosition(tileCoordinate.get(0), tileCoordinate.get(1));
-		if (tilesContainingBombs.contains(tileCoordinate)) {
-		    System.out.println("X: " + positionX + " Y:" + positionY);
-		    this.tilesContainingBombs.add(tileNumber);
-		    tiles.put(tileNumber, new Tile(positionX, positionY, true, false, false, true, 0));
-		} else {
-		    tiles.put(tileNumber, new Tile(positionX, positionY, true, false, false, false, 0));
-		}
+
+	for (List<Integer> tileCoordinate : tilesContainingBombs) {
+	    int positionX = tileCoordinate.get(0);
+	    int positionY = tileCoordinate.get(1);
+	    if (isWithinBound(positionX, positionY)) {
+		System.out.println("X: " + positionX + " Y:" + positionY);
+		tiles[convertTo1DPosition(positionX, positionY)] = BOMB;
 	    }
 	}
-	for (List<Integer> tileCoordinates : tilesContainingBombs) {
-	    increaseBombCountOfNeighbor(tileCoordinates.get(0), tileCoordinates.get(1));
-	}
+
+	countBombs();
+	drawDisplay();
     }
 
     public Board(int width, int height, Set<List<Integer>> duggedTiles, Set<List<Integer>> flaggedTiles,
 	    Set<List<Integer>> tilesContainingBomb) {
+	this(width, height, new byte[width * height]);
 
 	for (List<Integer> tile : duggedTiles) {
 	    if (flaggedTiles.contains(tile) | tilesContainingBomb.contains(tile)) {
@@ -134,49 +248,60 @@ public class Board {
 	    }
 	}
 
-	boolean isDug = false;
-	boolean hasFlag = false;
-	boolean containsBomb = false;
-	this.width = width;
-	this.height = height;
-	this.tilesContainingBombs = new HashSet<>();
-	this.tiles = new HashMap<>();
-	this.tilesContainingFlags = new HashSet<>();
-
-	for (int positionX = 0; positionX < width; positionX++) {
-	    for (int positionY = 0; positionY < height; positionY++) {
-		List<Integer> tileCoordinates = List.of(positionX, positionY);
-		isDug = duggedTiles.contains(tileCoordinates);
-		hasFlag = flaggedTiles.contains(tileCoordinates);
-		containsBomb = tilesContainingBomb.contains(tileCoordinates);
-		Integer tileNumber = convertTo1DPosition(positionX, positionY);
-
-		if (isDug) {
-		    // This tile is dug, without flag and bomb
-		    tiles.put(tileNumber, new Tile(positionX, positionY, false, false, isDug, false, 0));
-		} else if (hasFlag) {
-		    // tile is in flagged state and may contain bomb,
-		    tiles.put(tileNumber, new Tile(positionX, positionY, false, hasFlag, false, containsBomb, 0));
-		    tilesContainingFlags.add(tileNumber);
-		    if (containsBomb) {
-			// tile contains bomb add it to tilesContainingBombs
-			tilesContainingBombs.add(tileNumber);
-		    }
-		} else {
-		    // tile is in the untouched state, may contain a bomb
-		    tiles.put(tileNumber, new Tile(positionX, positionY, true, false, false, containsBomb, 0));
-		    if (containsBomb) {
-			// tile contains bomb add it to tilesContainingBombs
-			tilesContainingBombs.add(tileNumber);
-		    }
-
-		}
+	for (List<Integer> bombLocation : tilesContainingBomb) {
+	    if (isWithinBound(bombLocation.get(0), bombLocation.get(1))) {
+		// tile may be in the untouched or in the flagged state
+		tiles[convertTo1DPosition(bombLocation.get(0), bombLocation.get(1))] |= BOMB;
+	    }
+	}
+	for (List<Integer> flagLocation : flaggedTiles) {
+	    if (isWithinBound(flagLocation.get(0), flagLocation.get(1))) {
+		// tile is in flagged state and may contain bomb
+		tiles[convertTo1DPosition(flagLocation.get(0), flagLocation.get(1))] |= FLAGGED;
+	    }
+	}
+	for (List<Integer> dugLocation : duggedTiles) {
+	    if (isWithinBound(dugLocation.get(0), dugLocation.get(1))) {
+		// This tile is dug, without flag and bomb
+		tiles[convertTo1DPosition(dugLocation.get(0), dugLocation.get(1))] = DUG;
 	    }
 	}
 
-	for (List<Integer> bombLocation : tilesContainingBomb) {
-	    increaseBombCountOfNeighbor(bombLocation.get(0), bombLocation.get(1));
+	countBombs();
+	drawDisplay();
+    }
+
+    /**
+     * Creates a board of the given size over the given packed tiles, with one lock
+     * for every band of BAND_ROWS rows. The public constructors place the bombs,
+     * the flags and the dug tiles afterwards, then draw the display.
+     * 
+     * @param width,  the number of columns of the board
+     * @param height, the number of rows of the board
+     * @param tiles,  width * height packed tiles, all untouched
+     */
+    private Board(int width, int height, byte[] tiles) {
+	this.width = width;
+	this.height = height;
+	this.tiles = tiles;
+	this.display = new byte[height == 0 ? 0 : height * Math.max(2 * width - 1, 0) + height - 1];
+	int journalLength = 64;
+	while (journalLength < Math.min(tiles.length, MAX_JOURNAL)) {
+	    journalLength *= 2;
+	}
+	this.journal = new int[journalLength];
+	this.journalTail = new AtomicLong();
+	this.reportingThreads = new AtomicInteger();
+	this.changeReports = ThreadLocal.withInitial(ChangeReport::new);
+	this.bandLocks = new ReentrantLock[(height + BAND_ROWS - 1) / BAND_ROWS];
+	for (int band = 0; band < bandLocks.length; band++) {
+	    bandLocks[band] = new ReentrantLock();
 	}
+	this.bandWrites = new AtomicLongArray(2 * bandLocks.length);
+	this.lastSnapshot = new AtomicReference<>();
+	this.idleReveals = new ConcurrentLinkedQueue<>();
+	this.revealStrategy = RevealStrategy.FLOOD_FILL;
+	this.wordsPerRow = (width + 63) / 64;
     }
 
     /**
@@ -185,15 +310,8 @@ public class Board {
      * 
      * @return a list of (x,y) coordinates whose tile is already dug.
      */
-    public synchronized List<List<Integer>> getDugTiles() {
-	List<List<Integer>> duggedTiles = new ArrayList<>();
-	for (Entry<Integer, Tile> entry : tiles.entrySet()) {
-	    if (entry.getValue().isDug()) {
-		duggedTiles.add(convertTo2DPosition(entry.getKey()));
-	    }
-	}
-
-	return duggedTiles;
+    public List<List<Integer>> getDugTiles() {
+	return snapshot().getDugTiles();
     }
 
     /**
@@ -202,15 +320,8 @@ public class Board {
      * 
      * @return a list of (x,y) coordinates whose tile is already dug.
      */
-    public synchronized List<List<Integer>> getFlaggedTiles() {
-	List<List<Integer>> flaggedTiles = new ArrayList<>();
-	List<Integer> flaggedTilesList = new ArrayList<>(tilesContainingFlags);
-	flaggedTilesList.sort(null);
-	for (Integer tileNumber : flaggedTilesList) {
-	    flaggedTiles.add(convertTo2DPosition(tileNumber));
-	}
-	return flaggedTiles;
-
+    public List<List<Integer>> getFlaggedTiles() {
+	return snapshot().getFlaggedTiles();
     }
 
     /**
@@ -219,14 +330,8 @@ public class Board {
      * 
      * @return a list of (x,y) coordinates whose tile is already dug.
      */
-    public synchronized List<List<Integer>> getTilesWithBomb() {
-	List<List<Integer>> bombedTiles = new ArrayList<>();
-	List<Integer> bombedTilesList = new ArrayList<>(tilesContainingBombs);
-	bombedTilesList.sort(null);
-	for (Integer tileNumber : bombedTilesList) {
-	    bombedTiles.add(convertTo2DPosition(tileNumber));
-	}
-	return bombedTiles;
+    public List<List<Integer>> getTilesWithBomb() {
+	return snapshot().getTilesWithBomb();
     }
 
     /**
@@ -247,6 +352,251 @@ public class Board {
 	return height;
     }
 
+    /**
+     * Returns an immutable view of the current state of this board, which keeps
+     * answering for that state whatever happens to the board afterwards. The view
+     * shares the bands of BAND_ROWS rows that did not change with the previous
+     * view of this board, so only the bands changed since are copied. Threads
+     * taking a snapshot of the same version get the same view.
+     * 
+     * @return a snapshot of this board.
+     */
+    public Snapshot snapshot() {
+	Snapshot previous = lastSnapshot.get();
+	Snapshot snapshot = readTiles(() -> {
+	    long version = getVersion();
+	    if (previous != null && previous.version == version) {
+		return previous;
+	    }
+
+	    byte[][] bands = new byte[bandLocks.length][];
+	    long[] bandStamps = new long[bandLocks.length];
+	    for (int band = 0; band < bandLocks.length; band++) {
+		// read the stamp first, a lock free change during the copy makes it stale
+		bandStamps[band] = bandWrites.get(2 * band);
+		if (previous != null && previous.bandStamps[band] == bandStamps[band]) {
+		    bands[band] = previous.bands[band];
+		} else {
+		    int from = band * BAND_ROWS * width;
+		    bands[band] = Arrays.copyOfRange(tiles, from, Math.min(from + BAND_ROWS * width, tiles.length));
+		}
+	    }
+	    return new Snapshot(width, height, version, bands, bandStamps);
+	});
+
+	Snapshot latest = previous;
+	while (latest == null || snapshot.version > latest.version) {
+	    if (lastSnapshot.compareAndSet(latest, snapshot)) {
+		return snapshot;
+	    }
+	    latest = lastSnapshot.get();
+	}
+	// share the render of an equal snapshot taken concurrently
+	return latest.version == snapshot.version ? latest : snapshot;
+    }
+
+    /**
+     * Returns the version of this board, the number of changes made to its tiles
+     * since it was created.
+     * 
+     * @return the version of this board.
+     */
+    public long getVersion() {
+	return journalTail.get();
+    }
+
+    /**
+     * Returns the tiles changed since the given version of this board, with their
+     * current symbols. The board only remembers its last changes, a few times its
+     * number of tiles at most, so older versions have no delta.
+     * 
+     * @param version, an earlier version of this board
+     * @return the tiles changed since version, or an empty Optional if the board
+     *         does not remember all of them or version is not an earlier version
+     *         of this board.
+     */
+    public Optional<Delta> changesSince(long version) {
+	return readTiles(() -> {
+	    long current = journalTail.get();
+	    if (version < 0 || version > current || current - version > journal.length) {
+		return Optional.empty();
+	    }
+
+	    int[] changed = new int[(int) (current - version)];
+	    for (int change = 0; change < changed.length; change++) {
+		changed[change] = journal[(int) ((version + change) & (journal.length - 1))];
+	    }
+	    Arrays.sort(changed);
+	    int count = 0;
+	    for (int change = 0; change < changed.length; change++) {
+		if (count == 0 || changed[count - 1] != changed[change]) {
+		    changed[count++] = changed[change];
+		}
+	    }
+
+	    byte[] symbols = new byte[count];
+	    for (int change = 0; change < count; change++) {
+		symbols[change] = display[2 * changed[change]];
+	    }
+	    return Optional.of(new Delta(width, current, Arrays.copyOf(changed, count), symbols));
+	});
+    }
+
+    /**
+     * Returns the number of bytes of the ASCII string representation of this
+     * board, which only depends on its size.
+     * 
+     * @return the length of the render of this board
+     */
+    public int getRenderLength() {
+	return display.length;
+    }
+
+    /**
+     * Copies the ASCII string representation of this board, as returned by
+     * toString, into the given buffer. The representation is kept up to date by
+     * every change of the board, so this is a copy of getRenderLength() bytes and
+     * allocates nothing.
+     * 
+     * @param buffer, the buffer to copy the render into
+     * @param offset, index of buffer where the render starts, there must be at
+     *                least getRenderLength() bytes from offset to the end of
+     *                buffer
+     * @return the number of bytes copied
+     * @throws IllegalArgumentException if the render does not fit in buffer
+     */
+    public int renderTo(byte[] buffer, int offset) {
+	return renderRegion(buffer, offset, 0, 0, width, height, display.length);
+    }
+
+    /**
+     * Returns the number of bytes of the ASCII string representation of the
+     * given rectangle of this board, see renderTo.
+     * 
+     * @param positionX, x coordinate of the top left tile of the rectangle
+     * @param positionY, y coordinate of the top left tile of the rectangle
+     * @param columns,   width of the rectangle, must be non negative
+     * @param rows,      height of the rectangle, must be non negative
+     * @return the length of the render of the part of the rectangle on the board
+     */
+    public int getRenderLength(int positionX, int positionY, int columns, int rows) {
+	int left = Math.max(positionX, 0);
+	int top = Math.max(positionY, 0);
+	int right = (int) Math.min((long) positionX + columns, width);
+	int bottom = (int) Math.min((long) positionY + rows, height);
+	return left < right && top < bottom ? (bottom - top) * 2 * (right - left) - 1 : 0;
+    }
+
+    /**
+     * Copies the ASCII string representation of the given rectangle of this board
+     * into the given buffer, in the format of toString: newline-separated rows of
+     * space-separated characters, one row for every row of the rectangle. The
+     * parts of the rectangle outside the board are left out. Only the bands of
+     * the rows of the rectangle are read, so the cost does not depend on the size
+     * of the board.
+     * 
+     * @param buffer,    the buffer to copy the render into
+     * @param offset,    index of buffer where the render starts, there must be at
+     *                   least getRenderLength(positionX, positionY, columns,
+     *                   rows) bytes from offset to the end of buffer
+     * @param positionX, x coordinate of the top left tile of the rectangle
+     * @param positionY, y coordinate of the top left tile of the rectangle
+     * @param columns,   width of the rectangle, must be non negative
+     * @param rows,      height of the rectangle, must be non negative
+     * @return the number of bytes copied
+     * @throws IllegalArgumentException if the render does not fit in buffer
+     */
+    public int renderTo(byte[] buffer, int offset, int positionX, int positionY, int columns, int rows) {
+	int left = Math.max(positionX, 0);
+	int top = Math.max(positionY, 0);
+	int right = (int) Math.min((long) positionX + columns, width);
+	int bottom = (int) Math.min((long) positionY + rows, height);
+	return renderRegion(buffer, offset, left, top, right, bottom,
+		getRenderLength(positionX, positionY, columns, rows));
+    }
+
+    /**
+     * Returns the algorithm this board uses to reveal the neighborhood of a dug
+     * tile.
+     * 
+     * @return, the reveal strategy of this board
+     */
+    public RevealStrategy getRevealStrategy() {
+	return revealStrategy;
+    }
+
+    /**
+     * Changes the algorithm this board uses to reveal the neighborhood of a dug
+     * tile. All the strategies reveal the same tiles, so this never changes the
+     * outcome of a dig.
+     * 
+     * @param revealStrategy, the reveal strategy to use for the next digs, must not
+     *                        be null, and must not be BITBOARD if the board is lock
+     *                        free
+     */
+    public void setRevealStrategy(RevealStrategy revealStrategy) {
+	if (revealStrategy == null) {
+	    throw new IllegalArgumentException("The reveal strategy must not be null.");
+	}
+	lockAllBands();
+	try {
+	    if (lockFree && revealStrategy == RevealStrategy.BITBOARD) {
+		throw new IllegalArgumentException("The BITBOARD reveal strategy cannot be used lock free.");
+	    }
+	    this.revealStrategy = revealStrategy;
+	    if (revealStrategy != RevealStrategy.BITBOARD) {
+		untouchedBits = null;
+		emptyBits = null;
+		regionBits = null;
+		rowScratch = null;
+	    } else if (untouchedBits == null) {
+		buildBitboards();
+	    }
+	    if (revealStrategy != RevealStrategy.REGION_LABELS) {
+		regionParent = null;
+		regionNext = null;
+	    } else if (regionParent == null) {
+		buildRegionLabels();
+	    }
+	} finally {
+	    unlockAllBands();
+	}
+    }
+
+    /**
+     * Returns whether flags, flag removals, single tile observers and digs that
+     * reveal nothing skip the band locks of this board.
+     * 
+     * @return, true if this board is lock free, false otherwise
+     */
+    public boolean isLockFree() {
+	return lockFree;
+    }
+
+    /**
+     * Makes the single tile operations of this board lock free or not. In lock
+     * free mode, addFlagAt, removeFlagFrom, isUntouched, containsBomb and isFlagged
+     * never wait for a lock, each flag and flag removal is one compare-and-set of
+     * the tile, and so is a dig that reveals nothing. Digs that reveal a region
+     * still hold the bands of the region. The mode should be chosen before the
+     * board is shared with other threads.
+     * 
+     * @param lockFree, true to skip the band locks in single tile operations, must
+     *                  not be true if the reveal strategy is BITBOARD, whose
+     *                  bitboards pack the states of 64 tiles in one word
+     */
+    public void setLockFree(boolean lockFree) {
+	lockAllBands();
+	try {
+	    if (lockFree && revealStrategy == RevealStrategy.BITBOARD) {
+		throw new IllegalArgumentException("The BITBOARD reveal strategy cannot be used lock free.");
+	    }
+	    this.lockFree = lockFree;
+	} finally {
+	    unlockAllBands();
+	}
+    }
+
     /**
      * Checks whether the tile at the specified (x,y)-coordinates is in the
      * untouched state, returns true if the tile is untouched otherwise, return
@@ -262,8 +612,7 @@ public class Board {
 	    throw new IllegalArgumentException("The tile coordinates are out of bounds.");
 	}
 
-	Tile tile = tiles.get(this.convertTo1DPosition(positionX, positionY));
-	return tile.isUntouched();
+	return stateOf(tileAt(positionX, positionY)) == UNTOUCHED;
     }
 
     /**
@@ -280,8 +629,7 @@ public class Board {
 	    throw new IllegalArgumentException("The tile coordinates are out of bounds.");
 	}
 
-	Tile tile = tiles.get(this.convertTo1DPosition(positionX, positionY));
-	return tile.containsBomb();
+	return (tileAt(positionX, positionY) & BOMB) != 0;
     }
 
     /**
@@ -298,8 +646,7 @@ public class Board {
 	    throw new IllegalArgumentException("The tile coordinates are out of bounds.");
 	}
 
-	Tile tile = tiles.get(this.convertTo1DPosition(positionX, positionY));
-	return tile.isFlagged();
+	return stateOf(tileAt(positionX, positionY)) == FLAGGED;
     }
 
     /**
@@ -315,31 +662,8 @@ public class Board {
      * @return string representation of this board
      */
     @Override
-    public synchronized String toString() {
-	String space = " ";
-	String newline = "\n";
-	String result = "";
-
-	for (int height = 0; height < this.height; height++) {
-	    for (int width = 0; width < this.width; width++) {
-		Tile tile = tiles.get(convertTo1DPosition(width, height));
-		result += tile.toString();
-
-		if (width == this.width - 1) {
-		    continue;
-		}
-
-		result += space;
-	    }
-
-	    if (height == this.height - 1) {
-		continue;
-	    }
-
-	    result += newline;
-	}
-
-	return result;
+    public String toString() {
+	return snapshot().toString();
     }
 
     /**
@@ -359,17 +683,17 @@ public class Board {
 
 	// If the tile is untouched and has a flag on it, only then remove the flag from
 	// it.
-	Integer tileNumber = convertTo1DPosition(positionX, positionY);
-	Tile tile = tiles.get(tileNumber);
-	boolean result = false;
-	synchronized (tile) {
-	    if (tile.isFlagged()) {
-		tile.removeFlag();
-		tilesContainingFlags.remove(tileNumber);
-		result = true;
-	    }
+	int tileNumber = convertTo1DPosition(positionX, positionY);
+	if (lockFree) {
+	    return changeState(tileNumber, FLAGGED, UNTOUCHED);
+	}
+	ReentrantLock bandLock = bandLocks[positionY / BAND_ROWS];
+	bandLock.lock();
+	try {
+	    return changeState(tileNumber, FLAGGED, UNTOUCHED);
+	} finally {
+	    bandLock.unlock();
 	}
-	return result;
     }
 
     /**
@@ -389,23 +713,23 @@ public class Board {
 
 	// If the tile is untouched and has no flag on it, only then add the flag
 	// on it.
-	boolean result = false;
-	Integer tileNumber = convertTo1DPosition(positionX, positionY);
-	Tile tile = tiles.get(tileNumber);
-	synchronized (tile) {
-	    if (tile.isUntouched()) {
-		tile.addFlag();
-		tilesContainingFlags.add(tileNumber);
-		result = true;
-	    }
+	int tileNumber = convertTo1DPosition(positionX, positionY);
+	if (lockFree) {
+	    return changeState(tileNumber, UNTOUCHED, FLAGGED);
+	}
+	ReentrantLock bandLock = bandLocks[positionY / BAND_ROWS];
+	bandLock.lock();
+	try {
+	    return changeState(tileNumber, UNTOUCHED, FLAGGED);
+	} finally {
+	    bandLock.unlock();
 	}
-	return result;
     }
 
     /**
      * Digs the tile at the given (x,y) coordinate, removing any bomb under the it
      * (if a bomb is present), only if the specified tile is in the untouched state.
-     * If the tile is successfully dug, this method will recursively reveal its
+     * If the tile is successfully dug, this method will reveal its
      * untouched neighbors, provided none of them contain a bomb.
      * 
      * @param positionX, x co-ordinate of the given tile, must be within bound
@@ -413,45 +737,290 @@ public class Board {
      * @return true, if the tile at the specified coordinate was dug succesfully,
      *         false, otherwise.
      */
-    public synchronized boolean digAt(int positionX, int positionY) {
+    public boolean digAt(int positionX, int positionY) {
 
 	// If the tile is not within the bounds then return false
 	if (!isWithinBound(positionX, positionY)) {
 	    return false;
 	}
 
-	Integer tileNumber = convertTo1DPosition(positionX, positionY);
-	Tile tile = tiles.get(tileNumber);
-	boolean result = false;
-	synchronized (tile) {
-	    if (tile.isUntouched()) {
-		if (tile.containsBomb()) {
+	// Digs that reveal nothing only need the bands around the tile, or no band
+	// at all in lock free mode if the tile has no bomb
+	int tileNumber = convertTo1DPosition(positionX, positionY);
+	if (lockFree) {
+	    byte tile = (byte) TILE.getVolatile(tiles, tileNumber);
+	    while ((tile & BOMB) == 0 && (tile & BOMB_COUNT_MASK) != 0) {
+		if (stateOf(tile) != UNTOUCHED) {
+		    return false;
+		}
+		beginWrite(positionY / BAND_ROWS, positionY / BAND_ROWS);
+		try {
+		    if (changeTile(tileNumber, tile, withState(tile, DUG))) {
+			return false;
+		    }
+		} finally {
+		    endWrite(positionY / BAND_ROWS, positionY / BAND_ROWS);
+		}
+		tile = (byte) TILE.getVolatile(tiles, tileNumber);
+	    }
+	}
+	int firstBand = Math.max(positionY - 1, 0) / BAND_ROWS;
+	int lastBand = Math.min(positionY + 1, height - 1) / BAND_ROWS;
+	lockBands(firstBand, lastBand);
+	try {
+	    byte tile = tiles[tileNumber];
+	    if (stateOf(tile) != UNTOUCHED) {
+		// If the tile is already dug or has a flag on it then don't do anything
+		return false;
+	    }
+	    if ((tile & BOMB_COUNT_MASK) != 0
+		    && ((tile & BOMB) == 0 || revealStrategy != RevealStrategy.REGION_LABELS)) {
+		beginWrite(firstBand, lastBand);
+		try {
+		    return digUntouched(tileNumber) && (tile & BOMB) != 0;
+		} finally {
+		    endWrite(firstBand, lastBand);
+		}
+	    }
+	} finally {
+	    unlockBands(firstBand, lastBand);
+	}
 
-		    // Case1: If the tile is untouched, has no flag on it and contains bomb then dig
-		    // the tile and reveal its neighbors.
-		    tile.digUp();
-		    tilesContainingBombs.remove(tileNumber);
-		    decreaseBombCountOfNeighbor(positionX, positionY); // decrease the bomb count of neighboring tiles.
-		    revealNeighbors(positionX, positionY); // reveal the neighboring tiles.
-		    result = true; // Contained bomb and it was blown off !
+	// Every dig that reveals a region collects it in a Reveal of its own, so digs
+	// holding different bands run concurrently
+	Reveal reveal = idleReveals.poll();
+	if (reveal == null) {
+	    reveal = new Reveal();
+	}
+	try {
+	    return reveal.dig(tileNumber);
+	} finally {
+	    idleReveals.offer(reveal);
+	}
+    }
 
-		} else {
+    /**
+     * Removes the flag from the tile at the given (x,y) co-ordinate like
+     * removeFlagFrom(positionX, positionY), and adds the coordinates of the tile
+     * to changedTiles if the flag was removed.
+     * 
+     * @param positionX,    x coordinate of the given tile, must be within bound
+     * @param positionY,    y coordinate of the given tile, must be within bound
+     * @param changedTiles, list the coordinates of the changed tile are added to
+     * @return true, if the flag from the tile at specified co-ordinate was removed,
+     *         false, otherwise.
+     */
+    public boolean removeFlagFrom(int positionX, int positionY, List<List<Integer>> changedTiles) {
+	return reportChanges(() -> removeFlagFrom(positionX, positionY), changedTiles);
+    }
 
-		    // Case2: If the tile is untouched, has no flag on it and does not contain bomb
-		    // then dig the tile and reveal its neighbors.
-		    tile.digUp();
-		    revealNeighbors(positionX, positionY); // reveal the neighboring tiles.
-		}
+    /**
+     * Adds a flag on the tile at the given (x,y) co-ordinate like
+     * addFlagAt(positionX, positionY), and adds the coordinates of the tile to
+     * changedTiles if the flag was added.
+     * 
+     * @param positionX,    x coordinate of the given tile, must be within bound
+     * @param positionY,    y coordinate of the given tile, must be within bound
+     * @param changedTiles, list the coordinates of the changed tile are added to
+     * @return true, if the flag is added on the tile at specified co-ordinate,
+     *         false, otherwise.
+     */
+    public boolean addFlagAt(int positionX, int positionY, List<List<Integer>> changedTiles) {
+	return reportChanges(() -> addFlagAt(positionX, positionY), changedTiles);
+    }
+
+    /**
+     * Digs the tile at the given (x,y) coordinate like digAt(positionX,
+     * positionY), and adds the coordinates of every tile whose symbol in
+     * toString the dig changed to changedTiles: the dug tile, the tiles it
+     * revealed and, if it removed a bomb, the dug neighbors whose count dropped.
+     * The coordinates are added once each, in row major order.
+     * 
+     * @param positionX,    x co-ordinate of the given tile, must be within bound
+     * @param positionY,    y co-ordinate of the given tile, must be within bound
+     * @param changedTiles, list the coordinates of the changed tiles are added to
+     * @return true, if the tile at the specified coordinate was dug succesfully,
+     *         false, otherwise.
+     */
+    public boolean digAt(int positionX, int positionY, List<List<Integer>> changedTiles) {
+	return reportChanges(() -> digAt(positionX, positionY), changedTiles);
+    }
+
+    /**
+     * Digs the tiles at the given coordinates, one after the other, like digAt
+     * on each of them, taking the locks of the board once for all of them. No
+     * other operation changes the board in the middle of the digs, except, in
+     * lock free mode, the single tile operations that take no lock.
+     * 
+     * @param positions, (x,y) coordinates of the tiles to dig, those out of bound
+     *                   are skipped
+     * @return true, if one of the digs dug a tile with a bomb, false otherwise.
+     */
+    public boolean digAll(List<List<Integer>> positions) {
+	lockAllBands();
+	try {
+	    boolean boom = false;
+	    for (List<Integer> position : positions) {
+		// every band is held, so the band locks of digAt are taken again at once
+		boom |= digAt(position.get(0), position.get(1));
+	    }
+	    return boom;
+	} finally {
+	    unlockAllBands();
+	}
+    }
+
+    /**
+     * Adds flags on the tiles at the given coordinates, one after the other, like
+     * addFlagAt on each of them, taking the locks of the board once for all of
+     * them.
+     * 
+     * @param positions, (x,y) coordinates of the tiles to flag, those out of bound
+     *                   are skipped
+     * @return true, if at least one flag was added, false otherwise.
+     */
+    public boolean addFlags(List<List<Integer>> positions) {
+	lockAllBands();
+	try {
+	    boolean added = false;
+	    for (List<Integer> position : positions) {
+		added |= addFlagAt(position.get(0), position.get(1));
+	    }
+	    return added;
+	} finally {
+	    unlockAllBands();
+	}
+    }
+
+    /**
+     * Removes the flags from the tiles at the given coordinates, one after the
+     * other, like removeFlagFrom on each of them, taking the locks of the board
+     * once for all of them.
+     * 
+     * @param positions, (x,y) coordinates of the tiles to remove the flags from,
+     *                   those out of bound are skipped
+     * @return true, if at least one flag was removed, false otherwise.
+     */
+    public boolean removeFlags(List<List<Integer>> positions) {
+	lockAllBands();
+	try {
+	    boolean removed = false;
+	    for (List<Integer> position : positions) {
+		removed |= removeFlagFrom(position.get(0), position.get(1));
+	    }
+	    return removed;
+	} finally {
+	    unlockAllBands();
+	}
+    }
+
+    /**
+     * Digs the tiles at the given coordinates like digAll(positions), and adds the
+     * coordinates of every tile whose symbol in toString the digs changed to
+     * changedTiles, once each and in row major order, for all the digs together.
+     * 
+     * @param positions,    (x,y) coordinates of the tiles to dig, those out of
+     *                      bound are skipped
+     * @param changedTiles, list the coordinates of the changed tiles are added to
+     * @return true, if one of the digs dug a tile with a bomb, false otherwise.
+     */
+    public boolean digAll(List<List<Integer>> positions, List<List<Integer>> changedTiles) {
+	return reportChanges(() -> digAll(positions), changedTiles);
+    }
+
+    /**
+     * Adds flags on the tiles at the given coordinates like addFlags(positions),
+     * and adds the coordinates of the tiles flagged to changedTiles, once each and
+     * in row major order.
+     * 
+     * @param positions,    (x,y) coordinates of the tiles to flag, those out of
+     *                      bound are skipped
+     * @param changedTiles, list the coordinates of the changed tiles are added to
+     * @return true, if at least one flag was added, false otherwise.
+     */
+    public boolean addFlags(List<List<Integer>> positions, List<List<Integer>> changedTiles) {
+	return reportChanges(() -> addFlags(positions), changedTiles);
+    }
+
+    /**
+     * Removes the flags from the tiles at the given coordinates like
+     * removeFlags(positions), and adds the coordinates of the tiles whose flag was
+     * removed to changedTiles, once each and in row major order.
+     * 
+     * @param positions,    (x,y) coordinates of the tiles to remove the flags
+     *                      from, those out of bound are skipped
+     * @param changedTiles, list the coordinates of the changed tiles are added to
+     * @return true, if at least one flag was removed, false otherwise.
+     */
+    public boolean removeFlags(List<List<Integer>> positions, List<List<Integer>> changedTiles) {
+	return reportChanges(() -> removeFlags(positions), changedTiles);
+    }
 
+    /**
+     * Chords the tile at the given coordinates: if it is dug and the number of
+     * flags in its neighborhood equals its bomb count, digs every untouched tile
+     * of its neighborhood like digAt, revealing the tiles around them. The check
+     * and all the digs take the locks of the board once, so no other operation
+     * changes the board in the middle of the chord, except, in lock free mode,
+     * the single tile operations that take no lock.
+     * 
+     * @param positionX, x coordinate of the tile to chord
+     * @param positionY, y coordinate of the tile to chord
+     * @return true, if one of the digs dug a tile with a bomb, false otherwise,
+     *         in particular if the tile is out of bound, not dug, or the number of
+     *         flags around it is not its bomb count.
+     */
+    public boolean chordAt(int positionX, int positionY) {
+	if (!isWithinBound(positionX, positionY)) {
+	    return false;
+	}
+	lockAllBands();
+	try {
+	    byte tile = tiles[convertTo1DPosition(positionX, positionY)];
+	    if (stateOf(tile) != DUG) {
+		return false;
+	    }
+	    int flags = 0;
+	    for (int neighborY = positionY - 1; neighborY <= positionY + 1; neighborY++) {
+		for (int neighborX = positionX - 1; neighborX <= positionX + 1; neighborX++) {
+		    if (isWithinBound(neighborX, neighborY)
+			    && stateOf(tiles[convertTo1DPosition(neighborX, neighborY)]) == FLAGGED) {
+			flags++;
+		    }
+		}
+	    }
+	    if (flags != (tile & BOMB_COUNT_MASK)) {
+		return false;
+	    }
+	    boolean boom = false;
+	    for (int neighborY = positionY - 1; neighborY <= positionY + 1; neighborY++) {
+		for (int neighborX = positionX - 1; neighborX <= positionX + 1; neighborX++) {
+		    // digAt skips the tile itself, the tiles out of bound, flagged or dug
+		    boom |= digAt(neighborX, neighborY);
+		}
 	    }
+	    return boom;
+	} finally {
+	    unlockAllBands();
 	}
+    }
 
-	// Case 3: If the tile is already dug or has a flag on it then don't do anything
-	return result;
+    /**
+     * Chords the tile at the given coordinates like chordAt(positionX,
+     * positionY), and adds the coordinates of every tile whose symbol in toString
+     * the chord changed to changedTiles, once each and in row major order.
+     * 
+     * @param positionX,    x coordinate of the tile to chord
+     * @param positionY,    y coordinate of the tile to chord
+     * @param changedTiles, list the coordinates of the changed tiles are added to
+     * @return true, if one of the digs dug a tile with a bomb, false otherwise.
+     */
+    public boolean chordAt(int positionX, int positionY, List<List<Integer>> changedTiles) {
+	return reportChanges(() -> chordAt(positionX, positionY), changedTiles);
     }
 
     @Override
-    public synchronized boolean equals(Object thatObject) {
+    public boolean equals(Object thatObject) {
 	if (thatObject instanceof Board) {
 	    Board anotherBoard = (Board) thatObject;
 	    return sameValue(anotherBoard);
@@ -460,12 +1029,8 @@ public class Board {
     }
 
     @Override
-    public synchronized int hashCode() {
-	int result = 0;
-	for (Entry<Integer, Tile> entry : tiles.entrySet()) {
-	    result -= entry.getValue().hashCode();
-	}
-	return result;
+    public int hashCode() {
+	return snapshot().hashCode();
     }
 
     /**
@@ -479,10 +1044,7 @@ public class Board {
      *         otherwise.
      */
     private boolean sameValue(Board anotherTile) {
-	return this.getWidth() == anotherTile.getWidth() && this.getHeight() == anotherTile.getHeight()
-		&& this.getDugTiles().equals(anotherTile.getDugTiles())
-		&& this.getFlaggedTiles().equals(anotherTile.getFlaggedTiles())
-		&& this.getTilesWithBomb().equals(anotherTile.getTilesWithBomb());
+	return this.snapshot().equals(anotherTile.snapshot());
     }
 
     /**
@@ -492,9 +1054,8 @@ public class Board {
      * @param positionY, any y co-ordinate, must be within bound.
      * @return the row major index corresponding to the given (x,y) co-ordinate.
      */
-    private Integer convertTo1DPosition(int positionX, int positionY) {
-	int tileNumber = positionY * width + positionX;
-	return Integer.valueOf(tileNumber);
+    private int convertTo1DPosition(int positionX, int positionY) {
+	return positionY * width + positionX;
     }
 
     /**
@@ -520,96 +1081,324 @@ public class Board {
      *         tile, false otherwise.
      */
     private boolean neighborContainsBomb(int positionX, int positionY) {
-
-	// Obtain neighbors of this tile and for each tile check if it contains Bomb
-	// if yes return true, false otherwise.
-	Set<Integer> neighboringTiles = getNeighborsOf(positionX, positionY);
-
-	// removes all the tiles from neighboringTiles that are not in
-	// tilesContainingBombs
-	for (Integer tileNumber : neighboringTiles) {
-	    if (tilesContainingBombs.contains(tileNumber)) {
-		return true;
-	    }
-	}
-	return false;
+	return (tiles[convertTo1DPosition(positionX, positionY)] & BOMB_COUNT_MASK) != 0;
     }
 
     /**
-     * For each of the untouched neighbors of the given (x, y) tile, change their
-     * status to dug, and for only those tiles recursively repeat this procedure.
-     * The Neighborhood of tile is defined bas all the tiles whose tile number is in
-     * the set returned by revealNeighbors(positionX, positionY).
+     * Digs the region revealed from the given tile using the row bitboards instead
+     * of visiting tiles one at a time. The region of tiles to expand is kept in
+     * regionBits and grown by sweeping down and up over the rows until a sweep
+     * adds nothing: a row gains the untouched empty tiles that touch the region in
+     * the row itself or in the rows above and below it, together with the whole
+     * horizontal run of untouched empty tiles they belong to. Finally every
+     * untouched tile touching the region is dug.
      * 
-     * @param positionX, x co-ordinate of the given tile, must be within bounds.
-     * @param positionY, y co-ordinate of the given tile, must be within bounds.
-     * @return true, if the tiles in the neighborhood of the specified tile where
-     *         dug false, otherwise.
+     * @param start, row major index of the dug tile, must have no bomb in its
+     *               neighborhood.
      */
-    private boolean revealNeighbors(int positionX, int positionY) {
-	// Check if the neighbors have a flag or contain bomb, if yes then don't do
-	// anything
-
-	if (neighborContainsBomb(positionX, positionY)) {
-	    return false;
+    private void revealWithBitboards(int start) {
+	int startY = start / width;
+	int startX = start % width;
+	regionBits[startY * wordsPerRow + (startX >>> 6)] |= 1L << startX;
+	int top = startY;
+	int bottom = startY;
+
+	boolean grown = true;
+	while (grown) {
+	    grown = false;
+	    for (int rowY = Math.max(top - 1, 0); rowY <= Math.min(bottom + 1, height - 1); rowY++) {
+		if (growRegionInRow(rowY)) {
+		    grown = true;
+		    top = Math.min(top, rowY);
+		    bottom = Math.max(bottom, rowY);
+		}
+	    }
+	    for (int rowY = Math.min(bottom + 1, height - 1); rowY >= Math.max(top - 1, 0); rowY--) {
+		if (growRegionInRow(rowY)) {
+		    grown = true;
+		    top = Math.min(top, rowY);
+		    bottom = Math.max(bottom, rowY);
+		}
+	    }
 	}
 
-	// First, dig all the neighbors, afterwards attempt to reveal each neighbor of
-	// the this tile
-	Set<Integer> neighboringTiles = getNeighborsOf(positionX, positionY);
-	Set<Integer> nextCall = new HashSet<>();
-
-	for (Integer tileNumber : neighboringTiles) {
-	    Tile tile = tiles.get(tileNumber);
-	    synchronized (tile) {
-		if (tile.isUntouched()) {
-		    tile.digUp();
-		    nextCall.add(tileNumber);
+	// dig every untouched tile touching the region, the region included
+	for (int rowY = Math.max(top - 1, 0); rowY <= Math.min(bottom + 1, height - 1); rowY++) {
+	    int base = rowY * wordsPerRow;
+	    spreadRegionOver(rowY);
+	    for (int word = 0; word < wordsPerRow; word++) {
+		long dig = rowScratch[word] & untouchedBits[base + word];
+		// the tiles are dug word by word, so the bitboards are updated here rather
+		// than tile by tile in changeTile, digging never changes emptyBits
+		untouchedBits[base + word] &= ~dig;
+		while (dig != 0) {
+		    int tileNumber = rowY * width + (word << 6) + Long.numberOfTrailingZeros(dig);
+		    tiles[tileNumber] = withState(tiles[tileNumber], DUG);
+		    display[2 * tileNumber] = (byte) symbolOf(tiles[tileNumber]);
+		    journal[(int) (journalTail.getAndIncrement() & (journal.length - 1))] = tileNumber;
+		    reportChange(tileNumber);
+		    dig &= dig - 1;
 		}
 	    }
+	}
+	Arrays.fill(regionBits, top * wordsPerRow, (bottom + 1) * wordsPerRow, 0L);
+    }
 
+    /**
+     * Adds to regionBits the untouched empty tiles of the given row that touch the
+     * region, together with the horizontal runs of untouched empty tiles they
+     * belong to. Runs are filled a word at a time: adding the seeds to the run
+     * mask carries through every run bit above a seed, and the same is done on the
+     * bit reversed words to fill the run bits below a seed.
+     * 
+     * @param rowY, y co-ordinate of a row, must be within bounds.
+     * @return true if the region gained at least one tile in the row, false
+     *         otherwise.
+     */
+    private boolean growRegionInRow(int rowY) {
+	int base = rowY * wordsPerRow;
+	spreadRegionOver(rowY);
+
+	// fill towards higher x co-ordinates, carrying runs over word boundaries
+	long carry = 0;
+	for (int word = 0; word < wordsPerRow; word++) {
+	    long runs = untouchedBits[base + word] & emptyBits[base + word];
+	    long seeds = (rowScratch[word] | carry) & runs;
+	    long filled = (((runs + seeds) ^ runs) & runs) | seeds;
+	    rowScratch[word] = filled;
+	    carry = filled >>> 63;
 	}
 
-	// Afterwards, dig all the tiles in the nextCall
-	for (Integer tileNumber : nextCall) {
-	    List<Integer> tileCoordinates = convertTo2DPosition(tileNumber);
-	    revealNeighbors(tileCoordinates.get(0), tileCoordinates.get(1));
+	// fill towards lower x co-ordinates and merge the row into the region
+	boolean grown = false;
+	carry = 0;
+	for (int word = wordsPerRow - 1; word >= 0; word--) {
+	    if (rowScratch[word] == 0 && carry == 0) {
+		continue;
+	    }
+	    long runs = Long.reverse(untouchedBits[base + word] & emptyBits[base + word]);
+	    long seeds = (Long.reverse(rowScratch[word]) | carry) & runs;
+	    long filled = Long.reverse((((runs + seeds) ^ runs) & runs) | seeds);
+	    carry = filled << 63 >>> 63;
+	    if ((filled & ~regionBits[base + word]) != 0) {
+		regionBits[base + word] |= filled;
+		grown = true;
+	    }
 	}
-	return true;
+	return grown;
     }
 
     /**
-     * Returns the tile number of tiles that are within this board and one unit away
-     * from the tile at given (x,y) co-ordinate. For the tiles that are on the edge
-     * of the board, this method returns all the neighboring tiles that are within
-     * the board.
+     * Stores in rowScratch the tiles of the given row that are in the region or
+     * next to a tile of the region, in the same row or in the rows above and below
+     * it. Bits past the end of the row may be set as well.
      * 
-     * @param positionX, x coordinate of the given tile, must be within bound.
-     * @param positionY, y coordinate of the given tile, must be within bound.
-     * @return a set of tile numbers that are within the board and one unit away
-     *         from the tile at specified coordinate.
+     * @param rowY, y co-ordinate of a row, must be within bounds.
      */
-    private Set<Integer> getNeighborsOf(int positionX, int positionY) {
-	Set<Integer> neighbors = new HashSet<>();
+    private void spreadRegionOver(int rowY) {
+	Arrays.fill(rowScratch, 0L);
+	for (int neighborY = Math.max(rowY - 1, 0); neighborY <= Math.min(rowY + 1, height - 1); neighborY++) {
+	    int base = neighborY * wordsPerRow;
+	    long previous = 0;
+	    long region = regionBits[base];
+	    for (int word = 0; word < wordsPerRow; word++) {
+		long next = word < wordsPerRow - 1 ? regionBits[base + word + 1] : 0;
+		rowScratch[word] |= region | region << 1 | previous >>> 63 | region >>> 1 | next << 63;
+		previous = region;
+		region = next;
+	    }
+	}
+    }
 
-	// A list of offsets of the neighboring tile.
-	List<List<Integer>> offsets = List.of(List.of(-1, -1), List.of(0, -1), List.of(1, -1), List.of(-1, 0),
-		List.of(1, 0), List.of(-1, 1), List.of(0, 1), List.of(1, 1));
+    /**
+     * Creates the empty regions used by the REGION_LABELS reveal strategy from the
+     * current tiles: every empty tile is joined with its empty neighbors. Boards
+     * with at least PARALLEL_LABELING_TILES tiles are labeled in bands of rows in
+     * parallel, and the bands are joined along their borders afterwards.
+     */
+    private void buildRegionLabels() {
+	regionParent = new int[tiles.length];
+	regionNext = new int[tiles.length];
+	if (tiles.length < PARALLEL_LABELING_TILES) {
+	    labelRows(0, height);
+	    return;
+	}
 
-	// For every offset in offset, create a new (x,y) coordinate and add it to the
-	// neighbors only if it in within bounds
-	for (List<Integer> offset : offsets) {
-	    Integer newPositionX = positionX + offset.get(0);
-	    Integer newPositionY = positionY + offset.get(1);
-	    if (isWithinBound(newPositionX, newPositionY)) {
-		neighbors.add(convertTo1DPosition(newPositionX, newPositionY));
+	int bands = Math.min(height, 4 * ForkJoinPool.getCommonPoolParallelism());
+	int bandHeight = (height + bands - 1) / bands;
+	IntStream.range(0, bands).parallel()
+		.forEach(band -> labelRows(band * bandHeight, Math.min((band + 1) * bandHeight, height)));
+	for (int borderY = bandHeight; borderY < height; borderY += bandHeight) {
+	    for (int borderX = 0; borderX < width; borderX++) {
+		int tileNumber = convertTo1DPosition(borderX, borderY);
+		if (isEmpty(tiles[tileNumber])) {
+		    joinAbove(borderX, borderY);
+		}
 	    }
 	}
-	return neighbors;
     }
 
     /**
-     * Checks if the given (x, y) coordinate is within the board, returns true if it
+     * Labels the empty regions within the rows from firstRow (inclusive) to
+     * lastRow (exclusive), joining every empty tile with its empty neighbors on the
+     * left and in the row above, as long as that row is within the band. Only the
+     * entries of regionParent and regionNext of tiles within the band are written.
+     * 
+     * @param firstRow, y co-ordinate of the first row of the band
+     * @param lastRow,  y co-ordinate after the last row of the band
+     */
+    private void labelRows(int firstRow, int lastRow) {
+	for (int tileNumber = firstRow * width; tileNumber < lastRow * width; tileNumber++) {
+	    regionParent[tileNumber] = -1;
+	    regionNext[tileNumber] = tileNumber;
+	}
+	for (int rowY = firstRow; rowY < lastRow; rowY++) {
+	    for (int rowX = 0; rowX < width; rowX++) {
+		int tileNumber = convertTo1DPosition(rowX, rowY);
+		if (!isEmpty(tiles[tileNumber])) {
+		    continue;
+		}
+		if (rowX > 0 && isEmpty(tiles[tileNumber - 1])) {
+		    joinRegions(tileNumber, tileNumber - 1);
+		}
+		if (rowY > firstRow) {
+		    joinAbove(rowX, rowY);
+		}
+	    }
+	}
+    }
+
+    /**
+     * Joins the empty tile at the given (x,y) co-ordinate with the empty tiles
+     * above it, above left and above right of it.
+     * 
+     * @param positionX, x co-ordinate of an empty tile, must be within bounds.
+     * @param positionY, y co-ordinate of an empty tile, must be within bounds and
+     *                   greater than zero.
+     */
+    private void joinAbove(int positionX, int positionY) {
+	int tileNumber = convertTo1DPosition(positionX, positionY);
+	for (int aboveX = Math.max(positionX - 1, 0); aboveX <= Math.min(positionX + 1, width - 1); aboveX++) {
+	    int above = convertTo1DPosition(aboveX, positionY - 1);
+	    if (isEmpty(tiles[above])) {
+		joinRegions(tileNumber, above);
+	    }
+	}
+    }
+
+    /**
+     * Joins the tile at the given row major index, which just became empty, with
+     * the empty regions of all its empty neighbors.
+     * 
+     * @param tileNumber, row major index of an empty tile, must be within bound.
+     */
+    private void joinNeighborRegions(int tileNumber) {
+	int tileX = tileNumber % width;
+	int tileY = tileNumber / width;
+	for (int neighborY = Math.max(tileY - 1, 0); neighborY <= Math.min(tileY + 1, height - 1); neighborY++) {
+	    for (int neighborX = Math.max(tileX - 1, 0); neighborX <= Math.min(tileX + 1, width - 1); neighborX++) {
+		int neighbor = convertTo1DPosition(neighborX, neighborY);
+		if (neighbor != tileNumber && isEmpty(tiles[neighbor])) {
+		    joinRegions(tileNumber, neighbor);
+		}
+	    }
+	}
+    }
+
+    /**
+     * Merges the empty regions of the two given tiles, attaching the root of the
+     * smaller region to the root of the larger one and splicing their circular
+     * member lists together.
+     * 
+     * @param tileNumber,        row major index of a tile, must be within bound.
+     * @param anotherTileNumber, row major index of a tile, must be within bound.
+     */
+    private void joinRegions(int tileNumber, int anotherTileNumber) {
+	int root = findRegion(tileNumber);
+	int anotherRoot = findRegion(anotherTileNumber);
+	if (root == anotherRoot) {
+	    return;
+	}
+	if (regionParent[root] > regionParent[anotherRoot]) {
+	    // sizes are stored negated, so root belongs to the smaller region
+	    int smallerRoot = root;
+	    root = anotherRoot;
+	    anotherRoot = smallerRoot;
+	}
+	regionParent[root] += regionParent[anotherRoot];
+	regionParent[anotherRoot] = root;
+
+	int next = regionNext[root];
+	regionNext[root] = regionNext[anotherRoot];
+	regionNext[anotherRoot] = next;
+    }
+
+    /**
+     * Returns the root of the empty region of the given tile, halving the path to
+     * the root on the way.
+     * 
+     * @param tileNumber, row major index of a tile, must be within bound.
+     * @return row major index of the root of the region of the tile.
+     */
+    private int findRegion(int tileNumber) {
+	while (regionParent[tileNumber] >= 0) {
+	    int parent = regionParent[tileNumber];
+	    if (regionParent[parent] >= 0) {
+		regionParent[tileNumber] = regionParent[parent];
+	    }
+	    tileNumber = parent;
+	}
+	return tileNumber;
+    }
+
+    /**
+     * Runs the given operation with the change report of the current thread open,
+     * and adds the coordinates of the tiles whose symbol it changed to
+     * changedTiles, once each and in row major order.
+     * 
+     * @param operation,    an operation on this board by the current thread
+     * @param changedTiles, list the coordinates of the changed tiles are added to
+     * @return the result of the operation
+     */
+    private boolean reportChanges(BooleanSupplier operation, List<List<Integer>> changedTiles) {
+	ChangeReport report = changeReports.get();
+	report.size = 0;
+	report.open = true;
+	reportingThreads.incrementAndGet();
+	try {
+	    return operation.getAsBoolean();
+	} finally {
+	    reportingThreads.decrementAndGet();
+	    report.open = false;
+	    Arrays.sort(report.tiles, 0, report.size);
+	    for (int change = 0; change < report.size; change++) {
+		if (change == 0 || report.tiles[change - 1] != report.tiles[change]) {
+		    changedTiles.add(convertTo2DPosition(report.tiles[change]));
+		}
+	    }
+	}
+    }
+
+    /**
+     * Records a change of the symbol of the given tile in the change report of the
+     * current thread, if it is open.
+     * 
+     * @param tileNumber, row major index of the changed tile
+     */
+    private void reportChange(int tileNumber) {
+	if (reportingThreads.get() != 0) {
+	    ChangeReport report = changeReports.get();
+	    if (report.open) {
+		if (report.size == report.tiles.length) {
+		    report.tiles = Arrays.copyOf(report.tiles, 2 * report.size);
+		}
+		report.tiles[report.size++] = tileNumber;
+	    }
+	}
+    }
+
+    /**
+     * Checks if the given (x, y) coordinate is within the board, returns true if it
      * is, otherwise false.
      * 
      * @param positionX, any x coordinate
@@ -622,313 +1411,1274 @@ public class Board {
     }
 
     /**
-     * Reduces the bomb count of the tiles that are in the neighborhood of the given
-     * tile by one.
+     * Locks the bands from first to last in increasing order.
      * 
-     * @param positionX, any x coordinate of tile having a bomb
-     * @param positionY, any y coordinate of tile having a bomb
+     * @param first, index of the first band to lock
+     * @param last,  index of the last band to lock
      */
-    private void decreaseBombCountOfNeighbor(int positionX, int positionY) {
-	Set<Integer> neighborTiles = getNeighborsOf(positionX, positionY);
-	for (Integer tileNumber : neighborTiles) {
-	    tiles.get(tileNumber).decreaseBombCountBy(1);
+    private void lockBands(int first, int last) {
+	for (int band = first; band <= last; band++) {
+	    bandLocks[band].lock();
 	}
     }
 
     /**
-     * Increase the bomb count of the tiles that are in the neighborhood of the
-     * given tile by one.
+     * Unlocks the bands from first to last.
      * 
-     * @param positionX, any x coordinate of tile having a bomb,
-     * @param positionY, any y coordinate of tile having a bomb
+     * @param first, index of the first band to unlock
+     * @param last,  index of the last band to unlock
      */
-    private void increaseBombCountOfNeighbor(int positionX, int positionY) {
-	Set<Integer> neighborTiles = getNeighborsOf(positionX, positionY);
-	for (Integer tileNumber : neighborTiles) {
-	    tiles.get(tileNumber).increaseBombCountBy(1);
+    private void unlockBands(int first, int last) {
+	for (int band = first; band <= last; band++) {
+	    bandLocks[band].unlock();
 	}
     }
 
-}
-
-/**
- * A mutable tile on a Minesweeper board representing a tile in one of the
- * following states: -untouched state, a tile is untouched. - flagged state, a
- * tile has a flag on it. - dugged state, a tile without bomb under it and
- * without flag on it.
- * 
- * Action that can be performed on the tiles: 1. Dig a tile in the untouched
- * state, and change its state to dug state 2. Add a flag on a tile in the
- * untouched state, and change its state to flagged state. 3. Remove a flag from
- * a tile in a flagged state, and change its state to untouched state.
- * 
- * @author Admin
- *
- */
-class Tile {
+    /**
+     * Marks the start of a change of the tiles in the bands from first to last,
+     * so that the optimistic reads overlapping the change fail.
+     * 
+     * @param first, index of the first band to change
+     * @param last,  index of the last band to change
+     */
+    private void beginWrite(int first, int last) {
+	for (int band = first; band <= last; band++) {
+	    bandWrites.getAndIncrement(2 * band);
+	}
+    }
 
-    // fields
-    private final int positionX;
-    private final int positionY;
-    private boolean dug;
-    private boolean untouched;
-    private boolean flagged;
-    private boolean containsBomb;
-    private int bombCount;
+    /**
+     * Marks the end of a change of the tiles in the bands from first to last.
+     * 
+     * @param first, index of the first band changed
+     * @param last,  index of the last band changed
+     */
+    private void endWrite(int first, int last) {
+	for (int band = first; band <= last; band++) {
+	    bandWrites.getAndIncrement(2 * band + 1);
+	}
+    }
 
-    // Abstraction function
-    // AF(untouched, flagged, dug, bomb, bombCount) = A tile on a Minesweeper Board
-    // with
-    // following properties.
-    // 1. Tile is at position (position x, position y) where
-    // co-ordinate (x,y) start at top-left corner.
-    // 2. The tile is untouched, if untouched == true.
-    // 3. Tile has a flag, if flag == true.
-    // 3. Tile is dug, if dugged == true.
-    // 4. Tile contains a bomb, if bomb == true.
-    // 5. Tile has bombCount bombs in its neighborhood.
+    /**
+     * Copies the render of the columns left to right - 1 of the rows top to
+     * bottom - 1 into the given buffer. display is read without holding any band
+     * while no change is in progress in the bands of those rows, and the copy is
+     * made again if a change started meanwhile. After OPTIMISTIC_READS failed
+     * attempts it is copied holding the bands instead.
+     * 
+     * @param buffer, the buffer to copy the render into
+     * @param offset, index of buffer where the render starts
+     * @param left,   first column of the board to render
+     * @param top,    first row of the board to render
+     * @param right,  column after the last one to render
+     * @param bottom, row after the last one to render
+     * @param length, the length of the render
+     * @return the number of bytes copied
+     * @throws IllegalArgumentException if the render does not fit in buffer
+     */
+    private int renderRegion(byte[] buffer, int offset, int left, int top, int right, int bottom, int length) {
+	if (offset < 0 || buffer.length - offset < length) {
+	    throw new IllegalArgumentException("buffer too small for a render of " + length + " bytes");
+	}
+	if (length == 0) {
+	    return 0;
+	}
 
-    // Representation invariant
-    // 1. A tile will only be in one of the three states - untouched, dug,
-    // flagged.
-    // 1. An untouched tile may contain a bomb.
-    // 2. A flagged tile may contain a bomb.
-    // 2. A dug tile will not have a flag or contain a bomb.
-    // 3. Bomb count must never be negative.
+	int firstBand = top / BAND_ROWS;
+	int lastBand = (bottom - 1) / BAND_ROWS;
+	for (int attempt = 0; attempt < OPTIMISTIC_READS; attempt++) {
+	    long stamp = startOptimisticRead(firstBand, lastBand);
+	    if (stamp >= 0) {
+		copyRegion(buffer, offset, left, top, right, bottom, length);
+		if (validateOptimisticRead(stamp, firstBand, lastBand)) {
+		    return length;
+		}
+	    }
+	    Thread.onSpinWait();
+	}
 
-    // Safety from representation exposure
-    // 1. All the fields in this class are immutable.
-    // 2. All the fields are declared private and only positionX and positionY are
-    // final and remaining fields can be reassigned as follows:
-    // - untouched is reassigned only in digUP and in addFlag.
-    // - flagged is reassigned only in removeFlag and addFlag.
-    // - dug and containsBomb are reassigned only in digUp.
-    // - bombCount is reassigned only in decreaseBombCountBy
-    // increaseBombCountBy methods.
-    // 3. Observers like isUntouched(), containsFlag(), hasBomb(), getBombCount()
-    // don't reveal the internal representation.
-    // 4. Mutators like decreaseBombCountBy(), increaseBombCountCountBy(),
-    // addFlag(), digUp(), removeFlag() don't reveal the internal representation.
-    // 5. Creators don't reveal the internal representation.
+	lockBands(firstBand, lastBand);
+	try {
+	    copyRegion(buffer, offset, left, top, right, bottom, length);
+	} finally {
+	    unlockBands(firstBand, lastBand);
+	}
+	return length;
+    }
 
-    // Thread safety argument
-    // All the access to the fields of this class are guarded by the Tile's lock
+    /**
+     * Copies the render of the given columns and rows from display into the given
+     * buffer, see renderRegion.
+     * 
+     * @param buffer, the buffer to copy the render into
+     * @param offset, index of buffer where the render starts
+     * @param left,   first column of the board to render
+     * @param top,    first row of the board to render
+     * @param right,  column after the last one to render
+     * @param bottom, row after the last one to render
+     * @param length, the length of the render
+     */
+    private void copyRegion(byte[] buffer, int offset, int left, int top, int right, int bottom, int length) {
+	if (left == 0 && right == width) {
+	    // whole rows follow each other in display
+	    System.arraycopy(display, 2 * top * width, buffer, offset, length);
+	    return;
+	}
 
-    // Constructor to create an untouched tile at (positionX, positionY) which may
-    // contain bomb under it, and bombCount bomb in its neighborhood.
-    Tile(int positionX, int positionY, boolean bomb, int bombCount) {
-	this.positionX = positionX;
-	this.positionY = positionY;
-	this.untouched = true;
-	this.dug = false;
-	this.containsBomb = bomb;
-	this.flagged = false;
-	this.bombCount = bombCount;
+	int rowLength = 2 * (right - left) - 1;
+	int position = offset;
+	for (int row = top; row < bottom; row++) {
+	    if (row > top) {
+		buffer[position++] = '\n';
+	    }
+	    System.arraycopy(display, 2 * (row * width + left), buffer, position, rowLength);
+	    position += rowLength;
+	}
     }
 
-    // Constructor to create a tile at (positionX, positionY) with user defined
-    // status.
+    /**
+     * Reads the tiles with the given reader without holding any band: the reader
+     * runs while no change is in progress, and its result is only kept if no
+     * change started while it ran, otherwise it may have seen a torn board and
+     * runs again. After OPTIMISTIC_READS failed attempts the reader runs holding
+     * every band instead.
+     * 
+     * @param reader, reads the tiles, must not fail on any combination of tiles
+     * @return the result of the reader on a consistent board.
+     */
+    private <T> T readTiles(Supplier<T> reader) {
+	for (int attempt = 0; attempt < OPTIMISTIC_READS; attempt++) {
+	    long stamp = startOptimisticRead(0, bandLocks.length - 1);
+	    if (stamp >= 0) {
+		T result = reader.get();
+		if (validateOptimisticRead(stamp, 0, bandLocks.length - 1)) {
+		    return result;
+		}
+	    }
+	    Thread.onSpinWait();
+	}
 
-    Tile(int positionX, int positionY, boolean untouched, boolean flagged, boolean dug, boolean bomb, int bombCount) {
-	this.positionX = positionX;
-	this.positionY = positionY;
-	this.untouched = untouched;
-	this.flagged = flagged;
-	this.dug = dug;
-	this.bombCount = bombCount;
-	this.containsBomb = bomb;
+	lockAllBands();
+	try {
+	    return reader.get();
+	} finally {
+	    unlockAllBands();
+	}
     }
 
     /**
-     * Checks whether this tile is in the untouched state, returns true if the tile
-     * is untouched otherwise, return false.
+     * Returns the number of changes started on the bands from first to last, if
+     * no change is in progress on any of them. The counters of changes finished
+     * are all read before the counters of changes started, and each is at most
+     * the matching number of changes started, so both sums are only equal if no
+     * change was in progress.
      * 
-     * @return true if this tile is in the untouched state, false otherwise.
+     * @param first, index of the first band to read
+     * @param last,  index of the last band to read
+     * @return the number of changes started, or -1 if a change is in progress.
      */
-    public synchronized boolean isUntouched() {
-	return untouched;
+    private long startOptimisticRead(int first, int last) {
+	long finished = 0;
+	for (int band = first; band <= last; band++) {
+	    finished += bandWrites.get(2 * band + 1);
+	}
+	long started = 0;
+	for (int band = first; band <= last; band++) {
+	    started += bandWrites.get(2 * band);
+	}
+	return started == finished ? started : -1;
     }
 
     /**
-     * Checks whether this tile is in the dug state, returns true if the tile is dug
-     * otherwise, return false.
+     * Checks whether no change started on the bands from first to last since
+     * startOptimisticRead returned the given stamp, so what was read from them in
+     * between is consistent.
      * 
-     * @return true if this tile is in the dug state, false otherwise.
+     * @param stamp, the number of changes started returned by startOptimisticRead
+     * @param first, index of the first band read
+     * @param last,  index of the last band read
+     * @return true if no change started since, false otherwise.
      */
-    public synchronized boolean isDug() {
-	return dug;
+    private boolean validateOptimisticRead(long stamp, int first, int last) {
+	// keep the reads of the tiles before the reads of the counters
+	VarHandle.acquireFence();
+	long started = 0;
+	for (int band = first; band <= last; band++) {
+	    started += bandWrites.get(2 * band);
+	}
+	return started == stamp;
     }
 
     /**
-     * Checks whether this tile is in the flagged state, returns true if the tile is
-     * in the flagged state, otherwise return false.
+     * Locks every band of the board in increasing order.
+     */
+    private void lockAllBands() {
+	lockBands(0, bandLocks.length - 1);
+    }
+
+    /**
+     * Unlocks every band of the board.
+     */
+    private void unlockAllBands() {
+	unlockBands(0, bandLocks.length - 1);
+    }
+
+    /**
+     * Sets the bomb count of every tile to the number of bombs in its
+     * neighborhood, used by the constructors once all the bombs are placed.
+     */
+    private void countBombs() {
+	for (int tileNumber = 0; tileNumber < tiles.length; tileNumber++) {
+	    if ((tiles[tileNumber] & BOMB) != 0) {
+		increaseBombCountOfNeighbor(tileNumber % width, tileNumber / width);
+	    }
+	}
+    }
+
+    /**
+     * Writes the symbols of all the tiles into display, with the spaces and the
+     * newlines between them, used by the constructors once all the tiles are set.
+     */
+    private void drawDisplay() {
+	Arrays.fill(display, (byte) '\n');
+	for (int tileNumber = 0; tileNumber < tiles.length; tileNumber++) {
+	    display[2 * tileNumber] = (byte) symbolOf(tiles[tileNumber]);
+	    if ((tileNumber + 1) % width != 0) {
+		display[2 * tileNumber + 1] = ' ';
+	    }
+	}
+    }
+
+    /**
+     * Reduces the bomb count of the tiles that are in the neighborhood of the given
+     * tile by one.
      * 
-     * @return true if this tile has a flag on it, otherwise returns false
+     * @param positionX, any x coordinate of tile having a bomb
+     * @param positionY, any y coordinate of tile having a bomb
      */
-    public synchronized boolean isFlagged() {
-	return flagged;
+    private void decreaseBombCountOfNeighbor(int positionX, int positionY) {
+	for (int neighborY = positionY - 1; neighborY <= positionY + 1; neighborY++) {
+	    for (int neighborX = positionX - 1; neighborX <= positionX + 1; neighborX++) {
+		if ((neighborX != positionX || neighborY != positionY) && isWithinBound(neighborX, neighborY)) {
+		    int tileNumber = convertTo1DPosition(neighborX, neighborY);
+		    byte tile = tiles[tileNumber];
+		    while ((tile & BOMB_COUNT_MASK) > 0 && !changeTile(tileNumber, tile, (byte) (tile - 1))) {
+			// a flag was placed or removed in lock free mode
+			tile = (byte) TILE.getVolatile(tiles, tileNumber);
+		    }
+		}
+	    }
+	}
     }
 
     /**
-     * Checks whether this tile has a bomb under it, returns true if the tile has a
-     * flag on it, otherwise return false
+     * Digs the given tile if it is still untouched, removing the bomb under it if
+     * there is one.
      * 
-     * @return true if this tile has a bomb under it,otherwise returns false
+     * @param tileNumber, row major index of a tile in a held band.
+     * @return true if the tile was dug, false if it is flagged or dug already.
      */
-    public synchronized boolean containsBomb() {
-	return containsBomb;
+    private boolean digUntouched(int tileNumber) {
+	byte tile = tiles[tileNumber];
+	while (stateOf(tile) == UNTOUCHED) {
+	    if ((tile & BOMB) != 0) {
+		// Case1: the tile contains a bomb, it is blown off and the bomb count of
+		// neighboring tiles decreases.
+		if (changeTile(tileNumber, tile, (byte) (DUG | (tile & BOMB_COUNT_MASK)))) {
+		    decreaseBombCountOfNeighbor(tileNumber % width, tileNumber / width);
+		    return true;
+		}
+	    } else if (changeTile(tileNumber, tile, withState(tile, DUG))) {
+		// Case2: the tile does not contain a bomb
+		return true;
+	    }
+
+	    // a flag was placed or removed in lock free mode
+	    tile = (byte) TILE.getVolatile(tiles, tileNumber);
+	}
+	return false;
     }
 
     /**
-     * Returns the string representation of this tile in the following format '-' if
-     * the tile is untouched 'F' if the tile has a flag on it 'bombCount' if the
-     * tile is dug and has at-least one bomb in its neighbor ' ' if the tile is dug
-     * and has no bomb in its neighborhood
+     * Increase the bomb count of the tiles that are in the neighborhood of the
+     * given tile by one.
      * 
-     * @return string representation of this tile
+     * @param positionX, any x coordinate of tile having a bomb,
+     * @param positionY, any y coordinate of tile having a bomb
      */
-    @Override
-    public synchronized String toString() {
-	if (untouched) {
-	    return "-";
-	} else if (flagged) {
-	    return "F";
-	} else {
-	    if (bombCount == 0) {
-		return " ";
+    private void increaseBombCountOfNeighbor(int positionX, int positionY) {
+	for (int neighborY = positionY - 1; neighborY <= positionY + 1; neighborY++) {
+	    for (int neighborX = positionX - 1; neighborX <= positionX + 1; neighborX++) {
+		if ((neighborX != positionX || neighborY != positionY) && isWithinBound(neighborX, neighborY)) {
+		    tiles[convertTo1DPosition(neighborX, neighborY)]++;
+		}
+	    }
+	}
+    }
+
+    /**
+     * Stores the given packed tile at the given row major index if the tile there
+     * is still the expected one, keeping its symbol in display, the journal, the
+     * bitboards of the BITBOARD reveal strategy and the region labels of the
+     * REGION_LABELS strategy in sync with it when they are in use. Every change
+     * to a tile after the board is created goes through this method, except the
+     * word-wise digging of revealWithBitboards.
+     * 
+     * @param tileNumber, row major index of a tile, must be within bound.
+     * @param expected,   the packed tile expected at the index
+     * @param tile,       the new packed tile
+     * @return true if the tile was stored, false if the tile at the index was not
+     *         the expected one, which only happens in lock free mode.
+     */
+    private boolean changeTile(int tileNumber, byte expected, byte tile) {
+	if (!TILE.compareAndSet(tiles, tileNumber, expected, tile)) {
+	    return false;
+	}
+	byte drawn = tile;
+	display[2 * tileNumber] = (byte) symbolOf(drawn);
+	byte current = (byte) TILE.getVolatile(tiles, tileNumber);
+	while (current != drawn) {
+	    // another lock free change may have drawn its symbol before this one
+	    drawn = current;
+	    display[2 * tileNumber] = (byte) symbolOf(drawn);
+	    current = (byte) TILE.getVolatile(tiles, tileNumber);
+	}
+	if (tile != expected) {
+	    journal[(int) (journalTail.getAndIncrement() & (journal.length - 1))] = tileNumber;
+	    if (symbolOf(tile) != symbolOf(expected)) {
+		reportChange(tileNumber);
+	    }
+	}
+	boolean becomesEmpty = isEmpty(tile) && !isEmpty(expected);
+	if (becomesEmpty && regionParent != null) {
+	    joinNeighborRegions(tileNumber);
+	}
+	if (untouchedBits != null) {
+	    int tileX = tileNumber % width;
+	    int word = tileNumber / width * wordsPerRow + (tileX >>> 6);
+	    long bit = 1L << tileX;
+	    if (stateOf(tile) == UNTOUCHED) {
+		untouchedBits[word] |= bit;
 	    } else {
-		return String.valueOf(bombCount);
+		untouchedBits[word] &= ~bit;
+	    }
+	    if (isEmpty(tile)) {
+		emptyBits[word] |= bit;
+	    } else {
+		emptyBits[word] &= ~bit;
 	    }
 	}
+	return true;
     }
 
     /**
-     * Returns the number of bombs in the neighborhood of this tile
+     * Moves the given tile from one state to another, only if it is in the first
+     * state.
      * 
-     * @return, the the number of bombs in the neighborhood of this tile
+     * @param tileNumber, row major index of a tile, in a held band unless the
+     *                    board is lock free.
+     * @param from,       the state the tile must be in, one of UNTOUCHED or FLAGGED
+     * @param to,         the state to move the tile to, one of UNTOUCHED or FLAGGED
+     * @return true if the state of the tile was changed, false otherwise.
      */
-    public synchronized int getBombCount() {
-	return bombCount;
+    private boolean changeState(int tileNumber, int from, int to) {
+	int band = tileNumber / width / BAND_ROWS;
+	byte tile = (byte) TILE.getVolatile(tiles, tileNumber);
+	while (stateOf(tile) == from) {
+	    beginWrite(band, band);
+	    try {
+		if (changeTile(tileNumber, tile, withState(tile, to))) {
+		    return true;
+		}
+	    } finally {
+		endWrite(band, band);
+	    }
+	    // a dig nearby changed the bomb count of the tile
+	    tile = (byte) TILE.getVolatile(tiles, tileNumber);
+	}
+	return false;
     }
 
     /**
-     * Returns the x co-ordinate of this tile
+     * Returns the packed tile at the given (x,y) co-ordinate, holding the band of
+     * the tile unless the board is lock free.
      * 
-     * @return, the x co-ordinate of this tile
+     * @param positionX, x co-ordinate of a tile, must be within bound.
+     * @param positionY, y co-ordinate of a tile, must be within bound.
+     * @return the packed tile at the given co-ordinate.
      */
-    public synchronized int getpositionX() {
-	return positionX;
+    private byte tileAt(int positionX, int positionY) {
+	int tileNumber = convertTo1DPosition(positionX, positionY);
+	if (lockFree) {
+	    return (byte) TILE.getVolatile(tiles, tileNumber);
+	}
+	ReentrantLock bandLock = bandLocks[positionY / BAND_ROWS];
+	bandLock.lock();
+	try {
+	    return tiles[tileNumber];
+	} finally {
+	    bandLock.unlock();
+	}
     }
 
     /**
-     * Returns the y co-ordinate of this tile
+     * Creates the row bitboards used by the BITBOARD reveal strategy from the
+     * current tiles. Each row is stored in wordsPerRow words, the tile at (x,y) is
+     * bit x % 64 of word y * wordsPerRow + x / 64.
+     */
+    private void buildBitboards() {
+	untouchedBits = new long[height * wordsPerRow];
+	emptyBits = new long[height * wordsPerRow];
+	regionBits = new long[height * wordsPerRow];
+	rowScratch = new long[wordsPerRow];
+	for (int tileNumber = 0; tileNumber < tiles.length; tileNumber++) {
+	    changeTile(tileNumber, tiles[tileNumber], tiles[tileNumber]);
+	}
+    }
+
+    /**
+     * Returns the state bits of the given packed tile.
      * 
-     * @return, the y co-ordinate of this tile
+     * @param tile, a packed tile
+     * @return one of UNTOUCHED, FLAGGED or DUG
      */
-    public synchronized int getpositionY() {
-	return positionY;
+    private static int stateOf(byte tile) {
+	return tile & STATE_MASK;
     }
 
     /**
-     * Decrements the bomb count of the neighborhood by a specified amount. If the
-     * specified amount is greater than the actual bomb count, the bomb count will
-     * be reduced to zero.
+     * Checks whether the given packed tile is empty, that is whether it has no
+     * bomb under it and no bomb in its neighborhood.
      * 
-     * @param amountToDecrease, amount by which the bomb count will be decreased.
-     * @return updated bomb count after the decrement.
+     * @param tile, a packed tile
+     * @return true if the tile is empty, false otherwise
      */
-    public synchronized int decreaseBombCountBy(int amountToDecrease) {
-	int amountToSubtract = Math.min(bombCount, amountToDecrease);
-	bombCount -= amountToSubtract;
-	return bombCount;
+    private static boolean isEmpty(byte tile) {
+	return (tile & (BOMB | BOMB_COUNT_MASK)) == 0;
     }
 
     /**
-     * Increments the bomb count of the neighborhood by a specified amount.
+     * Returns the given packed tile with its state bits replaced by the given
+     * state, keeping its bomb and bomb count bits.
      * 
-     * @param amountToIncrease, amount by which the bomb count will be increased.
-     * @return updated bomb count after the increment.
+     * @param tile,  a packed tile
+     * @param state, one of UNTOUCHED, FLAGGED or DUG
+     * @return the packed tile in the given state
      */
-    public synchronized int increaseBombCountBy(int amountToIncrease) {
-	bombCount += amountToIncrease;
-	return bombCount;
+    private static byte withState(byte tile, int state) {
+	return (byte) ((tile & ~STATE_MASK) | state);
     }
 
     /**
-     * Adds a flag on this tile, only if it is in the untouched state.
+     * Returns the character representing the given packed tile in the following
+     * format '-' if the tile is untouched 'F' if the tile has a flag on it
+     * 'bombCount' if the tile is dug and has at-least one bomb in its neighbor ' '
+     * if the tile is dug and has no bomb in its neighborhood
      * 
-     * @return true if the specified flag was placed on the tile, false otherwise.
+     * @param tile, a packed tile
+     * @return character representing the given tile
      */
-    public synchronized boolean addFlag() {
-	if (isUntouched()) {
-	    untouched = false;
-	    flagged = true;
-	    return true;
+    private static char symbolOf(byte tile) {
+	switch (stateOf(tile)) {
+	case UNTOUCHED:
+	    return '-';
+	case FLAGGED:
+	    return 'F';
+	default:
+	    int bombCount = tile & BOMB_COUNT_MASK;
+	    return bombCount == 0 ? ' ' : (char) ('0' + bombCount);
 	}
-	return false;
     }
 
     /**
-     * Digs this tile and removes any bomb under it (if a bomb is present), only if
-     * it is in the untouched state.
+     * The tiles whose symbol the current operation of one thread changed, in the
+     * order they changed, tiles[0] to tiles[size - 1]. Changes are only recorded
+     * while the report is open.
+     */
+    private static final class ChangeReport {
+	private int[] tiles = new int[16];
+	private int size;
+	private boolean open;
+    }
+
+    /**
+     * Scratch space and held locks of one dig. A dig collects the region it
+     * reveals into queue, marking the collected tiles in visited, and only digs
+     * the region once it is completely known, so it neither recurses nor
+     * allocates per tile. While the region is collected, the dig holds the bands
+     * firstBand to lastBand of bandLocks, and the tiles are read as if the bomb
+     * under pendingBomb, the tile being dug, was already removed.
      * 
-     * @return true if this tile is dug, false otherwise.
+     * A Reveal is used by one dig at a time, and waits in idleReveals between digs.
      */
-    public synchronized boolean digUp() {
-	if (isUntouched()) {
-	    untouched = false;
-	    dug = true;
-	    if (containsBomb) {
-		containsBomb = false;
+    private final class Reveal {
+	private final long[] visited = new long[(tiles.length + 63) / 64];
+	private int[] queue = new int[64];
+	private int[] seeds = new int[64];
+	private int size = 0;
+	private int firstBand = 0;
+	private int lastBand = -1;
+	private int wantedBand = 0;
+	private int pendingBomb = -1;
+
+	/**
+	 * Digs the given tile if it is untouched and reveals its neighborhood: if
+	 * the tile has no bomb in its neighborhood, all of its untouched neighbors
+	 * are dug, and this procedure is repeated for each of those neighbors that
+	 * has no bomb in its neighborhood either. Tiles that were already dug
+	 * before the call are not expanded.
+	 * 
+	 * The dig starts holding the bands of the rows around the tile. Bands
+	 * below them are waited for as the region grows downwards, bands above
+	 * them are only tried, and if one of those is busy the dig releases
+	 * everything and starts over from the band it needs. Nothing is changed
+	 * before the region is completely known, so starting over is invisible to
+	 * other threads. The BITBOARD and REGION_LABELS strategies use structures
+	 * spanning the whole board, so their digs hold every band.
+	 * 
+	 * @param start, row major index of the tile to dig, must be within bound.
+	 * @return true if the tile was dug and contained a bomb, false otherwise.
+	 */
+	private boolean dig(int start) {
+	    int startY = start / width;
+	    int first = Math.max(startY - 1, 0) / BAND_ROWS;
+	    int last = Math.min(startY + 1, height - 1) / BAND_ROWS;
+	    while (true) {
+		holdBands(first, last);
+		try {
+		    RevealStrategy strategy = revealStrategy;
+		    boolean wholeBoard = strategy == RevealStrategy.BITBOARD
+			    || strategy == RevealStrategy.REGION_LABELS;
+		    if (wholeBoard && (firstBand > 0 || lastBand < bandLocks.length - 1)) {
+			first = 0;
+			last = bandLocks.length - 1;
+			continue;
+		    }
+
+		    // If the tile is already dug or has a flag on it then don't do anything
+		    if (stateOf(tiles[start]) != UNTOUCHED) {
+			return false;
+		    }
+
+		    boolean containedBomb = (tiles[start] & BOMB) != 0;
+		    if (wholeBoard) {
+			beginWrite(firstBand, lastBand);
+			try {
+			    if (!digUntouched(start)) {
+				return false;
+			    }
+			    if (neighborContainsBomb(start % width, startY)) {
+				return containedBomb;
+			    }
+			    if (strategy == RevealStrategy.BITBOARD) {
+				revealWithBitboards(start);
+			    } else {
+				labeledRegion(start);
+				digRegion();
+			    }
+			    return containedBomb;
+			} finally {
+			    endWrite(firstBand, lastBand);
+			}
+		    }
+
+		    pendingBomb = containedBomb ? start : -1;
+		    if (bombCountOf(start) == 0) {
+			boolean collected = strategy == RevealStrategy.SCANLINE ? scanlineRegion(start)
+				: floodFillRegion(start);
+			if (!collected) {
+			    // the region needs a band above the held ones that is busy
+			    first = wantedBand;
+			    last = lastBand;
+			    continue;
+			}
+		    }
+		    beginWrite(firstBand, lastBand);
+		    try {
+			if (!digUntouched(start)) {
+			    // a flag was placed on the tile in lock free mode
+			    return false;
+			}
+			digRegion();
+			return containedBomb;
+		    } finally {
+			endWrite(firstBand, lastBand);
+		    }
+		} finally {
+		    forgetRegion();
+		    releaseBands();
+		}
+	    }
+	}
+
+	/**
+	 * Collects the region revealed from the given tile into queue by visiting
+	 * the neighbors of one tile at a time in breadth first order, the queue
+	 * itself serves as the work queue.
+	 * 
+	 * @param start, row major index of the dug tile, must have no bomb in its
+	 *               neighborhood.
+	 * @return true if the region was collected, false if it needs a band that
+	 *         could not be taken.
+	 */
+	private boolean floodFillRegion(int start) {
+	    addToRegion(start);
+
+	    for (int head = 0; head < size; head++) {
+		int tileNumber = queue[head];
+		if (bombCountOf(tileNumber) != 0) {
+		    // numbered tiles are dug but their neighbors are not revealed
+		    continue;
+		}
+
+		int tileX = tileNumber % width;
+		int tileY = tileNumber / width;
+		if (!holdRows(tileY - 1, tileY + 1)) {
+		    return false;
+		}
+		for (int neighborY = Math.max(tileY - 1, 0); neighborY <= Math.min(tileY + 1, height - 1); neighborY++) {
+		    for (int neighborX = Math.max(tileX - 1, 0); neighborX <= Math.min(tileX + 1, width - 1); neighborX++) {
+			int neighbor = convertTo1DPosition(neighborX, neighborY);
+			if (!isVisited(neighbor) && stateOf(tiles[neighbor]) == UNTOUCHED) {
+			    addToRegion(neighbor);
+			}
+		    }
+		}
 	    }
 	    return true;
 	}
-	return false;
+
+	/**
+	 * Collects the region revealed from the given tile into queue one span at
+	 * a time. A span is a maximal horizontal run of untouched tiles without a
+	 * bomb in their neighborhood, it is collected together with the tiles left
+	 * and right of it, then the row above and the row below the span are
+	 * scanned once: untouched tiles without a bomb in their neighborhood become
+	 * seeds of new spans, other untouched tiles are collected as the numbered
+	 * border of the region. Seeds wait on seeds and are only collected when
+	 * their span is.
+	 * 
+	 * @param start, row major index of the dug tile, must have no bomb in its
+	 *               neighborhood.
+	 * @return true if the region was collected, false if it needs a band that
+	 *         could not be taken.
+	 */
+	private boolean scanlineRegion(int start) {
+	    int top = 0;
+	    seeds[top++] = start;
+
+	    while (top > 0) {
+		int seed = seeds[--top];
+		if (isVisited(seed)) {
+		    // the seed was collected as part of another span
+		    continue;
+		}
+
+		int spanY = seed / width;
+		if (!holdRows(spanY - 1, spanY + 1)) {
+		    return false;
+		}
+		int left = seed % width;
+		int right = left;
+		while (left > 0 && isSpanTile(convertTo1DPosition(left - 1, spanY))) {
+		    left--;
+		}
+		while (right < width - 1 && isSpanTile(convertTo1DPosition(right + 1, spanY))) {
+		    right++;
+		}
+
+		// collect the span and the tiles right next to it in its own row
+		int from = Math.max(left - 1, 0);
+		int to = Math.min(right + 1, width - 1);
+		for (int spanX = from; spanX <= to; spanX++) {
+		    int tileNumber = convertTo1DPosition(spanX, spanY);
+		    if (spanX >= left && spanX <= right
+			    || !isVisited(tileNumber) && stateOf(tiles[tileNumber]) == UNTOUCHED) {
+			addToRegion(tileNumber);
+		    }
+		}
+
+		// scan the rows above and below the span
+		for (int rowY = spanY - 1; rowY <= spanY + 1; rowY += 2) {
+		    if (rowY < 0 || rowY >= height) {
+			continue;
+		    }
+		    for (int rowX = from; rowX <= to; rowX++) {
+			int tileNumber = convertTo1DPosition(rowX, rowY);
+			if (isVisited(tileNumber) || stateOf(tiles[tileNumber]) != UNTOUCHED) {
+			    continue;
+			}
+			if (bombCountOf(tileNumber) == 0) {
+			    if (top == seeds.length) {
+				seeds = Arrays.copyOf(seeds, 2 * top);
+			    }
+			    seeds[top++] = tileNumber;
+			} else {
+			    addToRegion(tileNumber);
+			}
+		    }
+		}
+	    }
+	    return true;
+	}
+
+	/**
+	 * Collects the region revealed from the given tile into queue using the
+	 * precomputed empty regions: if every other tile of the empty region of the
+	 * given tile is still untouched, the revealed region is exactly that empty
+	 * region plus the untouched tiles around it, so its members are taken
+	 * straight from regionNext. Otherwise a flag or an earlier dig splits the
+	 * empty region, and the region is collected by floodFillRegion instead.
+	 * Must be called holding every band.
+	 * 
+	 * @param start, row major index of the dug tile, must have no bomb in its
+	 *               neighborhood.
+	 */
+	private void labeledRegion(int start) {
+	    for (int member = regionNext[start]; member != start; member = regionNext[member]) {
+		if (stateOf(tiles[member]) != UNTOUCHED) {
+		    floodFillRegion(start);
+		    return;
+		}
+	    }
+
+	    int member = start;
+	    do {
+		if (!isVisited(member)) {
+		    addToRegion(member);
+		}
+		int memberX = member % width;
+		int memberY = member / width;
+		for (int neighborY = Math.max(memberY - 1, 0); neighborY <= Math.min(memberY + 1, height - 1); neighborY++) {
+		    for (int neighborX = Math.max(memberX - 1, 0); neighborX <= Math.min(memberX + 1, width - 1); neighborX++) {
+			int neighbor = convertTo1DPosition(neighborX, neighborY);
+			if (!isVisited(neighbor) && stateOf(tiles[neighbor]) == UNTOUCHED) {
+			    addToRegion(neighbor);
+			}
+		    }
+		}
+		member = regionNext[member];
+	    } while (member != start);
+	}
+
+	/**
+	 * Digs every tile collected into queue that is still untouched.
+	 */
+	private void digRegion() {
+	    for (int index = 0; index < size; index++) {
+		digUntouched(queue[index]);
+	    }
+	}
+
+	/**
+	 * Forgets the collected region and the pending bomb, so the Reveal can be
+	 * used by the next dig.
+	 */
+	private void forgetRegion() {
+	    for (int index = 0; index < size; index++) {
+		int tileNumber = queue[index];
+		visited[tileNumber >>> 6] &= ~(1L << tileNumber);
+	    }
+	    size = 0;
+	    pendingBomb = -1;
+	}
+
+	/**
+	 * Returns the number of bombs in the neighborhood of the given tile once
+	 * the bomb under pendingBomb is removed.
+	 * 
+	 * @param tileNumber, row major index of a tile in a held band.
+	 * @return the bomb count of the tile after the dig.
+	 */
+	private int bombCountOf(int tileNumber) {
+	    int bombCount = tiles[tileNumber] & BOMB_COUNT_MASK;
+	    if (pendingBomb >= 0 && tileNumber != pendingBomb
+		    && Math.abs(tileNumber % width - pendingBomb % width) <= 1
+		    && Math.abs(tileNumber / width - pendingBomb / width) <= 1) {
+		bombCount--;
+	    }
+	    return bombCount;
+	}
+
+	/**
+	 * Checks whether the given tile can extend a span of scanlineRegion, that
+	 * is whether it is untouched, not yet collected and has no bomb in its
+	 * neighborhood.
+	 * 
+	 * @param tileNumber, row major index of a tile in a held band.
+	 * @return true if the tile belongs to the span of its neighbor, false
+	 *         otherwise.
+	 */
+	private boolean isSpanTile(int tileNumber) {
+	    return stateOf(tiles[tileNumber]) == UNTOUCHED && bombCountOf(tileNumber) == 0 && !isVisited(tileNumber);
+	}
+
+	/**
+	 * Appends the given tile to the region collected in queue and marks it in
+	 * visited, growing queue if it is full.
+	 * 
+	 * @param tileNumber, row major index of a tile that is not collected yet.
+	 */
+	private void addToRegion(int tileNumber) {
+	    if (size == queue.length) {
+		queue = Arrays.copyOf(queue, Math.min(2 * size, tiles.length));
+	    }
+	    queue[size++] = tileNumber;
+	    visited[tileNumber >>> 6] |= 1L << tileNumber;
+	}
+
+	/**
+	 * Checks whether the given tile is already collected into queue.
+	 * 
+	 * @param tileNumber, row major index of a tile, must be within bound.
+	 * @return true if the tile is marked in visited, false otherwise.
+	 */
+	private boolean isVisited(int tileNumber) {
+	    return (visited[tileNumber >>> 6] & (1L << tileNumber)) != 0;
+	}
+
+	/**
+	 * Holds the bands from first to last, locking them in increasing order, the
+	 * Reveal must not hold any band.
+	 * 
+	 * @param first, index of the first band to hold
+	 * @param last,  index of the last band to hold
+	 */
+	private void holdBands(int first, int last) {
+	    firstBand = first;
+	    lastBand = first - 1;
+	    while (lastBand < last) {
+		bandLocks[lastBand + 1].lock();
+		lastBand++;
+	    }
+	}
+
+	/**
+	 * Extends the held bands to cover the rows from fromRow to toRow, clipped to
+	 * the board. Bands below the held ones are waited for, bands above them are
+	 * only tried, since waiting for them could deadlock with a dig holding them
+	 * and waiting for ours.
+	 * 
+	 * @param fromRow, y co-ordinate of the first row to cover
+	 * @param toRow,   y co-ordinate of the last row to cover
+	 * @return true if all the rows are covered, false if a band above the held
+	 *         ones is busy, wantedBand is then the first band needed.
+	 */
+	private boolean holdRows(int fromRow, int toRow) {
+	    int from = Math.max(fromRow, 0) / BAND_ROWS;
+	    int to = Math.min(toRow, height - 1) / BAND_ROWS;
+	    while (lastBand < to) {
+		bandLocks[lastBand + 1].lock();
+		lastBand++;
+	    }
+	    while (firstBand > from) {
+		if (!bandLocks[firstBand - 1].tryLock()) {
+		    wantedBand = from;
+		    return false;
+		}
+		firstBand--;
+	    }
+	    return true;
+	}
+
+	/**
+	 * Unlocks all the held bands.
+	 */
+	private void releaseBands() {
+	    for (int band = firstBand; band <= lastBand; band++) {
+		bandLocks[band].unlock();
+	    }
+	    firstBand = 0;
+	    lastBand = -1;
+	}
     }
 
     /**
-     * Removes the flag from this tile, only if it is untouched, and already has a
-     * flag on it.
-     * 
-     * @return true if there was a flag on this tile and it was removed, false
-     *         otherwise.
+     * An immutable view of a board at one version. The version of a board counts
+     * the changes of its tiles, so two snapshots of a board with the same
+     * version hold the same tiles, and the one with the greater version was taken
+     * later. Snapshots are compared by their tiles only, like boards. The string
+     * representation of a snapshot is only rendered once, as ASCII bytes in a
+     * single pass, by the first thread asking for it, the others wait for that
+     * render. It can be copied into a buffer or written to a stream as it is.
      */
-    public synchronized boolean removeFlag() {
-	if (isFlagged()) {
-	    flagged = false;
-	    untouched = true;
+    public static final class Snapshot {
+
+	private final int width;
+	private final int height;
+	private final long version;
+	private final byte[][] bands;
+	private final long[] bandStamps;
+	private final FutureTask<byte[]> rendering;
+	private final FutureTask<String> text;
+
+	// Abstraction function
+	// AF(width, height, version, bands): the board of width width and height
+	// height as it was at version version. The tile at (x,y) is packed in
+	// bands[y / BAND_ROWS][(y % BAND_ROWS) * width + x]. bandStamps are only
+	// there to share the bands with the next snapshot of the board, rendering
+	// and text to share the string representation between its readers.
+
+	// Representation invariant
+	// 1. bands and bandStamps have one entry for every band of the board,
+	// bands[band] holds the BAND_ROWS * width tiles of the band, the last band
+	// may be shorter.
+	// 2. bandStamps[band] is the number of changes started on the band before
+	// its tiles were copied into bands[band].
+	// 3. rendering renders this snapshot in ASCII, text decodes that render.
+
+	// Safety from representation exposure
+	// All the fields are private and final, bands, bandStamps, rendering and
+	// the rendered bytes are never handed out, tiles are only handed out as
+	// coordinates, the render is copied into the buffers of the callers or
+	// written to their streams, and text is an immutable String.
+
+	// Thread safety argument
+	// Snapshots are immutable: all the fields are final and the arrays are never
+	// changed once the snapshot is made, by this snapshot or any other sharing
+	// them. rendering and text are FutureTasks, which run at most once and make
+	// the other threads asking for their result wait for it. The rendered
+	// bytes are never changed once rendering completes.
+
+	private Snapshot(int width, int height, long version, byte[][] bands, long[] bandStamps) {
+	    this.width = width;
+	    this.height = height;
+	    this.version = version;
+	    this.bands = bands;
+	    this.bandStamps = bandStamps;
+	    this.rendering = new FutureTask<>(this::render);
+	    this.text = new FutureTask<>(() -> new String(rendered(), StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * Returns the version of the board this snapshot was taken at.
+	 * 
+	 * @return the version of this snapshot.
+	 */
+	public long getVersion() {
+	    return version;
+	}
+
+	/**
+	 * Returns the width of the board.
+	 * 
+	 * @return the number of columns of the board
+	 */
+	public int getWidth() {
+	    return width;
+	}
+
+	/**
+	 * Returns the height of the board.
+	 * 
+	 * @return the number of rows of the board
+	 */
+	public int getHeight() {
+	    return height;
+	}
+
+	/**
+	 * Returns a list containing all the dug tiles, in the order of their row
+	 * major index.
+	 * 
+	 * @return a list of (x,y) coordinates whose tile was dug.
+	 */
+	public List<List<Integer>> getDugTiles() {
+	    return tilesMatching(STATE_MASK, DUG);
+	}
+
+	/**
+	 * Returns a list containing all the flagged tiles, in the order of their row
+	 * major index.
+	 * 
+	 * @return a list of (x,y) coordinates whose tile had a flag on it.
+	 */
+	public List<List<Integer>> getFlaggedTiles() {
+	    return tilesMatching(STATE_MASK, FLAGGED);
+	}
+
+	/**
+	 * Returns a list containing all the tiles with a bomb under them, in the
+	 * order of their row major index.
+	 * 
+	 * @return a list of (x,y) coordinates whose tile had a bomb under it.
+	 */
+	public List<List<Integer>> getTilesWithBomb() {
+	    return tilesMatching(BOMB, BOMB);
+	}
+
+	/**
+	 * Returns the string representation of the board at this version, in the
+	 * format of Board.toString.
+	 * 
+	 * @return string representation of this snapshot
+	 */
+	@Override
+	public String toString() {
+	    return shared(text, () -> new String(render(), StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * Returns the number of bytes of the ASCII string representation of this
+	 * snapshot.
+	 * 
+	 * @return the length of the render of this snapshot
+	 */
+	public int getRenderLength() {
+	    if (height == 0) {
+		return 0;
+	    }
+	    return height * Math.max(2 * width - 1, 0) + height - 1;
+	}
+
+	/**
+	 * Copies the ASCII string representation of this snapshot into the given
+	 * buffer.
+	 * 
+	 * @param buffer, the buffer to copy the render into
+	 * @param offset, index of buffer where the render starts, there must be at
+	 *                least getRenderLength() bytes from offset to the end of
+	 *                buffer
+	 * @return the number of bytes copied
+	 * @throws IllegalArgumentException if the render does not fit in buffer
+	 */
+	public int renderTo(byte[] buffer, int offset) {
+	    byte[] render = rendered();
+	    if (offset < 0 || buffer.length - offset < render.length) {
+		throw new IllegalArgumentException("buffer too small for a render of " + render.length + " bytes");
+	    }
+	    System.arraycopy(render, 0, buffer, offset, render.length);
+	    return render.length;
+	}
+
+	/**
+	 * Puts the ASCII string representation of this snapshot into the given
+	 * buffer at its position, and advances the position past it.
+	 * 
+	 * @param buffer, the buffer to put the render into, must have at least
+	 *                getRenderLength() bytes remaining
+	 * @throws IllegalArgumentException if the render does not fit in buffer
+	 */
+	public void renderTo(ByteBuffer buffer) {
+	    byte[] render = rendered();
+	    if (buffer.remaining() < render.length) {
+		throw new IllegalArgumentException("buffer too small for a render of " + render.length + " bytes");
+	    }
+	    buffer.put(render);
+	}
+
+	/**
+	 * Writes the ASCII string representation of this snapshot to the given
+	 * stream, without copying it.
+	 * 
+	 * @param out, the stream to write the render to
+	 * @throws IOException if the stream fails
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+	    out.write(rendered());
+	}
+
+	/**
+	 * Returns the render of this snapshot, rendering it if no thread did yet.
+	 * 
+	 * @return the ASCII string representation of this snapshot, must not be
+	 *         changed
+	 */
+	private byte[] rendered() {
+	    return shared(rendering, this::render);
+	}
+
+	/**
+	 * Returns the result of the given task, shared by all the threads asking for
+	 * it: the first one runs the task, the others wait for its result.
+	 * 
+	 * @param task,     the task computing the result
+	 * @param fallback, computes the result instead if the thread is interrupted
+	 *                  while waiting
+	 * @return the result of the task
+	 */
+	private static <T> T shared(FutureTask<T> task, Supplier<T> fallback) {
+	    task.run();
+	    try {
+		return task.get();
+	    } catch (InterruptedException interrupted) {
+		Thread.currentThread().interrupt();
+		return fallback.get();
+	    } catch (ExecutionException failed) {
+		throw new IllegalStateException("rendering the board failed", failed.getCause());
+	    }
+	}
+
+	/**
+	 * Renders the ASCII string representation of this snapshot in one pass over
+	 * its tiles, see toString.
+	 * 
+	 * @return the render of this snapshot
+	 */
+	private byte[] render() {
+	    byte[] render = new byte[getRenderLength()];
+	    int position = 0;
+
+	    for (int row = 0; row < height; row++) {
+		if (row > 0) {
+		    render[position++] = '\n';
+		}
+		byte[] tiles = bands[row / BAND_ROWS];
+		int from = (row % BAND_ROWS) * width;
+		for (int column = 0; column < width; column++) {
+		    if (column > 0) {
+			render[position++] = ' ';
+		    }
+		    render[position++] = (byte) symbolOf(tiles[from + column]);
+		}
+	    }
+
+	    return render;
+	}
+
+	@Override
+	public boolean equals(Object thatObject) {
+	    if (!(thatObject instanceof Snapshot)) {
+		return false;
+	    }
+	    Snapshot that = (Snapshot) thatObject;
+	    if (width != that.width || height != that.height) {
+		return false;
+	    }
+	    for (int band = 0; band < bands.length; band++) {
+		if (bands[band] == that.bands[band]) {
+		    // shared between two snapshots of the same board
+		    continue;
+		}
+		for (int index = 0; index < bands[band].length; index++) {
+		    if (((bands[band][index] ^ that.bands[band][index]) & (STATE_MASK | BOMB)) != 0) {
+			return false;
+		    }
+		}
+	    }
 	    return true;
 	}
-	return false;
-    }
 
-    @Override
-    public synchronized boolean equals(Object thatObject) {
-	if (thatObject instanceof Tile) {
-	    Tile anotherTile = (Tile) thatObject;
-	    return this.sameValue(anotherTile);
+	@Override
+	public int hashCode() {
+	    int result = 31 * width + height;
+	    for (byte[] band : bands) {
+		for (byte tile : band) {
+		    result = 31 * result + (tile & (STATE_MASK | BOMB));
+		}
+	    }
+	    return result;
+	}
+
+	/**
+	 * Returns the (x,y) coordinates of all the tiles for which (tile & mask) ==
+	 * value, in the order of their row major index.
+	 * 
+	 * @param mask,  bits of the packed tile to inspect
+	 * @param value, expected value of the inspected bits
+	 * @return a list of (x,y) coordinates of the matching tiles.
+	 */
+	private List<List<Integer>> tilesMatching(int mask, int value) {
+	    List<List<Integer>> matchingTiles = new ArrayList<>();
+	    for (int band = 0; band < bands.length; band++) {
+		for (int index = 0; index < bands[band].length; index++) {
+		    if ((bands[band][index] & mask) == value) {
+			int tileNumber = band * BAND_ROWS * width + index;
+			matchingTiles.add(List.of(tileNumber % width, tileNumber / width));
+		    }
+		}
+	    }
+	    return matchingTiles;
 	}
-	return false;
     }
 
     /**
-     * Compares this tile with another tile and returns true if both the tiles have
-     * coordinates and have the same status, otherwise returns false.
-     * 
-     * @param anotherTile, any tile on a minesweeper board
-     * @return true both the tiles have coordinates and have the same status, false
-     *         otherwise.
+     * An immutable list of the tiles of a board changed since some earlier
+     * version, with the symbols they show at the version of the delta. Each tile
+     * is listed once, in the order of the row major index, however many times it
+     * changed.
      */
-    private boolean sameValue(Tile anotherTile) {
-	return this.positionX == anotherTile.getpositionX() && this.positionY == anotherTile.getpositionY()
-		&& this.isUntouched() == anotherTile.isUntouched() && this.isDug() == anotherTile.isDug()
-		&& this.isFlagged() == anotherTile.isFlagged() && this.getBombCount() == anotherTile.getBombCount();
-    }
+    public static final class Delta {
+
+	private final int width;
+	private final long version;
+	private final int[] tiles;
+	private final byte[] symbols;
+
+	// Abstraction function
+	// AF(width, version, tiles, symbols): the tiles changed on a board of width
+	// width up to version version, the tile with row major index tiles[i] shows
+	// the symbol symbols[i] at that version.
+
+	// Representation invariant
+	// tiles and symbols have the same length, tiles is strictly increasing.
+
+	// Safety from representation exposure
+	// All the fields are private and final, tiles and symbols are never handed
+	// out, tiles are only handed out as coordinates.
+
+	// Thread safety argument
+	// Deltas are immutable: all the fields are final and the arrays are never
+	// changed once the delta is made.
+
+	private Delta(int width, long version, int[] tiles, byte[] symbols) {
+	    this.width = width;
+	    this.version = version;
+	    this.tiles = tiles;
+	    this.symbols = symbols;
+	}
 
-    @Override
-    public synchronized int hashCode() {
-	return Integer.hashCode(positionX) + Integer.hashCode(positionY) + Integer.hashCode(bombCount)
-		+ Boolean.hashCode(containsBomb) + Boolean.hashCode(flagged) + Boolean.hashCode(untouched);
+	/**
+	 * Returns the version of the board this delta goes up to.
+	 * 
+	 * @return the version of this delta.
+	 */
+	public long getVersion() {
+	    return version;
+	}
+
+	/**
+	 * Returns the number of changed tiles.
+	 * 
+	 * @return the number of tiles in this delta.
+	 */
+	public int size() {
+	    return tiles.length;
+	}
+
+	/**
+	 * Returns the changed tiles, in the order of their row major index.
+	 * 
+	 * @return a list of (x,y) coordinates of the changed tiles.
+	 */
+	public List<List<Integer>> getTiles() {
+	    List<List<Integer>> changedTiles = new ArrayList<>();
+	    for (int tileNumber : tiles) {
+		changedTiles.add(List.of(tileNumber % width, tileNumber / width));
+	    }
+	    return changedTiles;
+	}
+
+	/**
+	 * Returns the string representation of this delta: one line for every
+	 * changed tile, in the order of getTiles, with the x coordinate, the y
+	 * coordinate and the symbol of the tile separated by spaces, in the format
+	 * of Board.toString. The lines are separated by newlines.
+	 * 
+	 * @return string representation of this delta
+	 */
+	@Override
+	public String toString() {
+	    StringBuilder result = new StringBuilder();
+	    for (int change = 0; change < tiles.length; change++) {
+		if (change > 0) {
+		    result.append('\n');
+		}
+		result.append(tiles[change] % width).append(' ').append(tiles[change] / width).append(' ')
+			.append((char) symbols[change]);
+	    }
+	    return result.toString();
+	}
     }
 
 }
\ No newline at end of file
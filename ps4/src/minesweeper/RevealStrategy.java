@@ -0,0 +1,42 @@
+/* Copyright (c) 2007-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+/**
+ * The algorithm a Board uses to find the tiles revealed by a dig. All the
+ * strategies reveal exactly the same tiles, they only differ in how the region
+ * is explored.
+ */
+public enum RevealStrategy {
+
+    /**
+     * Expands the region one tile at a time, visiting the eight neighbors of every
+     * tile without a bomb in its neighborhood.
+     */
+    FLOOD_FILL,
+
+    /**
+     * Expands the region one horizontal run of tiles without a bomb in their
+     * neighborhood at a time, scanning the rows above and below each run once.
+     */
+    SCANLINE,
+
+    /**
+     * Grows the region with whole 64-bit words of row bitboards, shifting the
+     * region into its neighborhood and filling runs of tiles without a bomb in
+     * their neighborhood a word at a time. The bitboards are kept only while this
+     * strategy is selected and cost three bits per tile.
+     */
+    BITBOARD,
+
+    /**
+     * Labels the connected regions of tiles without a bomb in their neighborhood
+     * once, keeps the labels up to date as bombs are dug up, and reveals a whole
+     * labeled region at once when none of its tiles was flagged or dug before. The
+     * labels are kept only while this strategy is selected and cost eight bytes
+     * per tile.
+     */
+    REGION_LABELS
+
+}
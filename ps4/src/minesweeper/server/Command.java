@@ -0,0 +1,367 @@
+/* Copyright (c) 2007-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper.server;
+
+import java.util.Arrays;
+
+/**
+ * A mutable command from a client, decoded straight from the bytes of its line.
+ * A connection reuses one Command for all its lines, so decoding a line
+ * allocates nothing, except for a digs, flags or deflags with more tiles than
+ * any line before. The commands follow the grammar
+ *  
+ * <pre>
+ *   COMMAND ::= LOOK | HELP | BYE | DIG | FLAG | DEFLAG | DIGS | FLAGS | DEFLAGS | CHORD | COMPACT | BATCH
+ *   LOOK ::= "look" | "look" SPACE INT SPACE INT SPACE NAT SPACE NAT | "look since" SPACE NAT
+ *   HELP ::= "help"
+ *   BYE ::= "bye"
+ *   DIG ::= "dig" SPACE INT SPACE INT
+ *   FLAG ::= "flag" SPACE INT SPACE INT
+ *   DEFLAG ::= "deflag" SPACE INT SPACE INT
+ *   DIGS ::= "digs" (SPACE INT SPACE INT)+
+ *   FLAGS ::= "flags" (SPACE INT SPACE INT)+
+ *   DEFLAGS ::= "deflags" (SPACE INT SPACE INT)+
+ *   CHORD ::= "chord" SPACE INT SPACE INT
+ *   COMPACT ::= "compact on" | "compact off"
+ *   BATCH ::= "batch on" | "batch off"
+ *   INT ::= "-"? NAT
+ *   NAT ::= [0-9]+
+ *   SPACE ::= " "
+ * </pre>
+ *  
+ * where the numbers of "look since" fit in a long and all the others in an
+ * int.
+ */
+final class Command {
+
+    /** The kinds of commands, INVALID for lines that are not a command. */
+    enum Type {
+	INVALID, LOOK, HELP, BYE, DIG, FLAG, DEFLAG, DIGS, FLAGS, DEFLAGS, CHORD, COMPACT, BATCH
+    }
+
+    private Type type = Type.INVALID;
+    private int x;
+    private int y;
+    private int width;
+    private int height;
+    private long version;
+    private boolean region;
+    private boolean since;
+    private boolean on;
+    private int[] points = new int[16];
+    private int pointCount;
+
+    // line, position, end and number only hold the state of parse while it runs
+    private byte[] line;
+    private int position;
+    private int end;
+    private long number;
+
+    // Abstraction function
+    // AF(type, x, y, width, height, version, region, since, on, points,
+    // pointCount): the last line decoded, a command of kind type, or no command
+    // if type is INVALID. A look asks for the rectangle of width by height tiles
+    // from (x,y) if region, for the changes since version if since, for the
+    // whole board otherwise. A dig, flag, deflag or chord is at (x,y), a digs,
+    // flags or deflags at the pointCount tiles (points[2 * i], points[2 * i +
+    // 1]), and a compact or batch switches compact or batch mode on if on, off
+    // otherwise.
+
+    // Representation invariant
+    // region and since are only true for a LOOK, and never both. width, height
+    // and version are >= 0. 0 <= 2 * pointCount <= points.length, and pointCount
+    // is > 0 only for a DIGS, FLAGS or DEFLAGS.
+
+    // Safety from representation exposure
+    // All the fields are private and primitive or immutable, except line, which
+    // is only held while parse runs and never handed out, and points, which is
+    // never handed out, only its elements.
+
+    /**
+     * Decodes the given line into this command.
+     *  
+     * @param buffer bytes holding the line
+     * @param offset index of the first byte of the line in buffer
+     * @param length number of bytes of the line, without its line terminator
+     * @return true if the line is a command, false otherwise, when getType()
+     *         becomes INVALID
+     */
+    boolean parse(byte[] buffer, int offset, int length) {
+	line = buffer;
+	position = offset;
+	end = offset + length;
+	region = false;
+	since = false;
+	pointCount = 0;
+	type = decode();
+	if (type == Type.INVALID) {
+	    pointCount = 0;
+	}
+	line = null;
+	return type != Type.INVALID;
+    }
+
+    /**
+     * @return the kind of the last decoded command
+     */
+    Type getType() {
+	return type;
+    }
+
+    /**
+     * @return the x coordinate of a dig, flag, deflag, chord or look of a
+     *         rectangle
+     */
+    int getX() {
+	return x;
+    }
+
+    /**
+     * @return the y coordinate of a dig, flag, deflag, chord or look of a
+     *         rectangle
+     */
+    int getY() {
+	return y;
+    }
+
+    /**
+     * @return the number of columns of a look of a rectangle
+     */
+    int getWidth() {
+	return width;
+    }
+
+    /**
+     * @return the number of rows of a look of a rectangle
+     */
+    int getHeight() {
+	return height;
+    }
+
+    /**
+     * @return the version of a look since a version
+     */
+    long getVersion() {
+	return version;
+    }
+
+    /**
+     * @return true if the command is a look of a rectangle of the board
+     */
+    boolean isRegion() {
+	return region;
+    }
+
+    /**
+     * @return true if the command is a look of the changes since a version
+     */
+    boolean isSince() {
+	return since;
+    }
+
+    /**
+     * @return the number of tiles of a digs, flags or deflags
+     */
+    int getPointCount() {
+	return pointCount;
+    }
+
+    /**
+     * @param index index of a tile of a digs, flags or deflags, requires
+     *              0 <= index < getPointCount()
+     * @return the x coordinate of the tile
+     */
+    int getPointX(int index) {
+	return points[2 * index];
+    }
+
+    /**
+     * @param index index of a tile of a digs, flags or deflags, requires
+     *              0 <= index < getPointCount()
+     * @return the y coordinate of the tile
+     */
+    int getPointY(int index) {
+	return points[2 * index + 1];
+    }
+
+    /**
+     * @return true if the command is a compact or batch that switches its mode
+     *         on
+     */
+    boolean isOn() {
+	return on;
+    }
+
+    /**
+     * Decodes the line from position to end.
+     *  
+     * @return the kind of the command on the line
+     */
+    private Type decode() {
+	if (position == end) {
+	    return Type.INVALID;
+	}
+	switch (line[position]) {
+	case 'l':
+	    if (!literal("look")) {
+		return Type.INVALID;
+	    }
+	    if (position == end) {
+		return Type.LOOK;
+	    }
+	    if (literal(" since ")) {
+		if (!natural(Long.MAX_VALUE) || position != end) {
+		    return Type.INVALID;
+		}
+		version = number;
+		since = true;
+		return Type.LOOK;
+	    }
+	    if (!coordinates()) {
+		return Type.INVALID;
+	    }
+	    if (!literal(" ") || !natural(Integer.MAX_VALUE)) {
+		return Type.INVALID;
+	    }
+	    width = (int) number;
+	    if (!literal(" ") || !natural(Integer.MAX_VALUE) || position != end) {
+		return Type.INVALID;
+	    }
+	    height = (int) number;
+	    region = true;
+	    return Type.LOOK;
+	case 'h':
+	    return literal("help") && position == end ? Type.HELP : Type.INVALID;
+	case 'b':
+	    if (literal("batch ")) {
+		on = literal("on");
+		return (on || literal("off")) && position == end ? Type.BATCH : Type.INVALID;
+	    }
+	    return literal("bye") && position == end ? Type.BYE : Type.INVALID;
+	case 'd':
+	    if (literal("digs")) {
+		return points() ? Type.DIGS : Type.INVALID;
+	    }
+	    if (literal("dig")) {
+		return coordinates() && position == end ? Type.DIG : Type.INVALID;
+	    }
+	    if (literal("deflags")) {
+		return points() ? Type.DEFLAGS : Type.INVALID;
+	    }
+	    return literal("deflag") && coordinates() && position == end ? Type.DEFLAG : Type.INVALID;
+	case 'f':
+	    if (literal("flags")) {
+		return points() ? Type.FLAGS : Type.INVALID;
+	    }
+	    return literal("flag") && coordinates() && position == end ? Type.FLAG : Type.INVALID;
+	case 'c':
+	    if (literal("chord")) {
+		return coordinates() && position == end ? Type.CHORD : Type.INVALID;
+	    }
+	    if (!literal("compact ")) {
+		return Type.INVALID;
+	    }
+	    on = literal("on");
+	    return (on || literal("off")) && position == end ? Type.COMPACT : Type.INVALID;
+	default:
+	    return Type.INVALID;
+	}
+    }
+
+    /**
+     * Decodes " INT SPACE INT" into x and y.
+     *  
+     * @return true if the line continued with two coordinates
+     */
+    private boolean coordinates() {
+	if (!literal(" ") || !integer()) {
+	    return false;
+	}
+	x = (int) number;
+	if (!literal(" ") || !integer()) {
+	    return false;
+	}
+	y = (int) number;
+	return true;
+    }
+
+    /**
+     * Decodes (SPACE INT SPACE INT)+ up to the end of the line into points,
+     * growing points only if the line has more tiles than it ever held.
+     * 
+     * @return true if the rest of the line was one or more pairs of coordinates
+     */
+    private boolean points() {
+	do {
+	    if (!coordinates()) {
+		return false;
+	    }
+	    if (2 * pointCount == points.length) {
+		points = Arrays.copyOf(points, 2 * points.length);
+	    }
+	    points[2 * pointCount] = x;
+	    points[2 * pointCount + 1] = y;
+	    pointCount++;
+	} while (position < end);
+	return true;
+    }
+
+    /**
+     * Decodes an INT that fits in an int into number.
+     *  
+     * @return true if the line continued with such an INT
+     */
+    private boolean integer() {
+	boolean negative = position < end && line[position] == '-';
+	if (negative) {
+	    position++;
+	}
+	if (!natural(negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE)) {
+	    return false;
+	}
+	if (negative) {
+	    number = -number;
+	}
+	return true;
+    }
+
+    /**
+     * Decodes a NAT of at most the given value into number.
+     *  
+     * @param maximum largest value allowed
+     * @return true if the line continued with such a NAT
+     */
+    private boolean natural(long maximum) {
+	int start = position;
+	number = 0;
+	while (position < end && line[position] >= '0' && line[position] <= '9') {
+	    int digit = line[position] - '0';
+	    if (number > (maximum - digit) / 10) {
+		return false;
+	    }
+	    number = number * 10 + digit;
+	    position++;
+	}
+	return position > start;
+    }
+
+    /**
+     * Moves past the given text if the line continues with it.
+     *  
+     * @param text ASCII text
+     * @return true if the line continued with text
+     */
+    private boolean literal(String text) {
+	if (end - position < text.length()) {
+	    return false;
+	}
+	for (int index = 0; index < text.length(); index++) {
+	    if (line[position + index] != text.charAt(index)) {
+		return false;
+	    }
+	}
+	position += text.length();
+	return true;
+    }
+}
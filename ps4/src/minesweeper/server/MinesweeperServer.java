@@ -5,11 +5,28 @@ package minesweeper.server;
 
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import minesweeper.Board;
+import minesweeper.server.ServerLog.Level;
 
 /**
  * Multiplayer Minesweeper server.
@@ -19,13 +36,38 @@ public class MinesweeperServer {
     // System thread safety argument
     // 1. This class creates a separate thread for handling of each client
     // connection.
-    // 2. Multiple clients can add flag to and/or remove flag from different tiles
-    // at a same time. Each client will acquire the lock associated with a
-    // particular
-    // tile.
-    // 3. Only one client will be able to dig at the board at a time, other tiles
-    // can add flag and/or remove flag during digging. Each client will acquire the
-    // lock associated with the entire board.
+    // 2. All the clients share one Board, which splits its rows into bands, each
+    // guarded by a ReentrantLock of its own. A flag, a deflag or a dig only holds
+    // the bands of the rows it reads or changes, so clients working on different
+    // bands flag, deflag and dig at the same time. Commands on several tiles hold
+    // every band until all their tiles are done. In lock free mode, flags,
+    // deflags and digs that reveal nothing change their tile by compare-and-set
+    // without holding its band.
+    // 3. Looks do not lock the board: the board is rendered from its display
+    // and the changes since a version are read from its journal, both copied
+    // with optimistic reads that are retried if a change started meanwhile, and
+    // only hold the bands after repeated retries. The other queries answer from
+    // immutable snapshots of the board.
+    // 4. With event loops, each connection is registered with one event loop and
+    // only ever handled by its thread. The accepting thread hands connections
+    // over through the thread safe queue of the event loop.
+    // 5. With virtual threads, each connection is handled by a virtual thread of
+    // its own started by connectionExecutor, as with a thread per connection.
+    // Board only blocks on ReentrantLocks, never in synchronized blocks, so a
+    // virtual thread waiting for a band does not pin its carrier thread.
+    // 6. With workers, each connection is handled by one of the threads of
+    // connectionExecutor, a bounded ThreadPoolExecutor, and waits in its bounded
+    // queue while all the workers are busy.
+    // 7. clientCount, sessionRejections and queueRejections are atomic counters.
+    // 8. With several acceptors, each acceptor thread only accepts from its own
+    // server socket, or from the one server socket they share if the system
+    // has no SO_REUSEPORT. Admission only uses the atomic counters, and
+    // connections are handed to event loops through their thread safe queues.
+    // 9. Every thread logs through log, which is thread safe, instead of printing
+    // to the console itself.
+    // 10. Each connection writes its replies through a SocketWriter of its own,
+    // only used by the thread handling the connection. The SocketWriters share
+    // their pool of buffers through a thread safe queue.
 
     /** Default server port. */
     private static final int DEFAULT_PORT = 4444;
@@ -33,37 +75,99 @@ public class MinesweeperServer {
     private static final int MAXIMUM_PORT = 65535;
     /** Default square board size. */
     private static final int DEFAULT_SIZE = 10;
-
-    /** Socket for receiving incoming connections. */
-    private final ServerSocket serverSocket;
+    /** Initial size of the buffer each event-loop connection reads lines into. */
+    private static final int INPUT_BUFFER_SIZE = 1024;
+    /**
+     * Size in bytes of the replies collected for a burst of lines past which they
+     * are sent before the next lines are handled, so that a client pipelining
+     * large replies never makes the server hold more than about one of them.
+     */
+    private static final int MAXIMUM_BATCH_SIZE = SocketWriter.MAXIMUM_POOLED_SIZE;
+    /** Largest number of reads of an event-loop connection before the others get their turn. */
+    private static final int MAXIMUM_READS = 16;
+    /** Syntax of the commands, sent in reply to help and to lines that are not a command. */
+    private static final String HELP_MESSAGE = " Use any one of the command and follow "
+	    + "the correct syntax: - look, look x y w h, look since v, bye, help, dig x y, flag x y, deflag x y, "
+	    + "digs x y ..., flags x y ..., deflags x y ..., chord x y, compact on, compact off, batch on, batch off";
+    /** Reply to lines that are not a command. */
+    private static final String UNSUPPORTED_MESSAGE = "This command is not supported." + HELP_MESSAGE;
+    /** Reply to a dig of a tile with a bomb. */
+    private static final String BOOM_MESSAGE = "BOOM!";
+    /** Message sent to a client the server has no room for, before closing its connection. */
+    private static final String BUSY_MESSAGE = "Server busy, try again later.";
+    /** Line terminator sent after every message. */
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    /** Replies sent as they are, encoded once with their line terminator. */
+    private static final byte[] HELP_REPLY = reply(HELP_MESSAGE);
+    private static final byte[] UNSUPPORTED_REPLY = reply(UNSUPPORTED_MESSAGE);
+    private static final byte[] BOOM_REPLY = reply(BOOM_MESSAGE);
+    private static final byte[] BUSY_REPLY = reply(BUSY_MESSAGE);
+    private static final byte[] COMPACT_ON_REPLY = reply("Compact mode is on.");
+    private static final byte[] COMPACT_OFF_REPLY = reply("Compact mode is off.");
+    private static final byte[] BATCH_ON_REPLY = reply("Batch mode is on.");
+    private static final byte[] BATCH_OFF_REPLY = reply("Batch mode is off.");
+    /** Beginnings of the first lines of replies, followed by a number. */
+    private static final byte[] CHANGES_HEADER = "CHANGES ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DELTA_HEADER = "DELTA ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] BOARD_HEADER = "BOARD ".getBytes(StandardCharsets.US_ASCII);
+
+    /** Sockets for receiving incoming connections, all bound to the same port. */
+    private final ServerSocket[] serverSockets;
+    /** Number of threads accepting connections. */
+    private final int acceptors;
     /** True if the server should *not* disconnect a client after a BOOM message. */
     private final boolean debug;
+    /** Number of event-loop threads serving the connections, 0 for a thread per connection. */
+    private final int eventLoops;
+    /** Starts the thread of each connection, null to start a platform thread per connection. */
+    private final ExecutorService connectionExecutor;
+    /** Limits on the connections the server takes. */
+    private final Limits limits;
+    /** Log of the connections and, at debug level, of every request and reply. */
+    private final ServerLog log;
+    /** Options of the sockets of the connections. */
+    private final SocketSettings socketSettings;
 
     private final Board board; // initialized in runMinesweeperServer
 
-    private int clientCount;
+    /** Number of connections admitted and not closed yet. */
+    private final AtomicInteger clientCount = new AtomicInteger();
+    /** Number of connections turned away because of limits.getMaxSessions(). */
+    private final AtomicLong sessionRejections = new AtomicLong();
+    /** Number of connections turned away because the queue of the workers was full. */
+    private final AtomicLong queueRejections = new AtomicLong();
 
-    // AF(serverSocket, board, debug, clientCount) = A minesweeper server that
+    // AF(serverSockets, board, debug, clientCount) = A minesweeper server that
     // allows clientCount clients to interact with a single minesweeper board.
     // The server has following properties:
     // 1. It will not terminate the client connection when the client digs at a tile
     // containing a bomb, if debug flag is true.
-    // 2. The serverSocket listens to incoming connections from remote clients.
+    // 2. The serverSockets listen to incoming connections from remote clients,
+    // acceptors threads accept them.
+    // 3. It turns away the connections above the limits, counting them in
+    // sessionRejections and queueRejections.
 
     // Representation Invariant:
-    // 1. serverSocket, board, clientCount, and debug should not point to null
-    // 2. If the client digs at a tile containing a bomb and debug is off, send
+    // 1. serverSockets, board, clientCount, and debug should not point to null
+    // 2. serverSockets holds acceptors sockets bound to the same port if the
+    // system supports SO_REUSEPORT, one socket otherwise, acceptors >= 1.
+    // 3. If the client digs at a tile containing a bomb and debug is off, send
     // BOOM! message to the client and their connection must be disconnected.
+    // 4. 0 <= clientCount, and clientCount <= limits.getMaxSessions() if it is
+    // not 0.
 
     // Representation Safety Argument
-    // 1. serverSocket, debug, board are private and final.
-    // 2. clientCount is private but not final, it is reassigned only in
-    // handleConnection method.
+    // 1. serverSockets, acceptors, debug, eventLoops, connectionExecutor,
+    // limits, log, socketSettings, board, clientCount, sessionRejections and
+    // queueRejections are private and final.
+    // 2. limits and socketSettings are immutable, log is only written to, and
+    // the counters are only handed out as numbers.
     // 3. Creators of this class don't reveal internal representation
     // 4. All the public methods of the class don't reveal internal representation.
 
     /**
-     * Make a MinesweeperServer that listens for connections on port.
+     * Make a MinesweeperServer that listens for connections on port, serving each
+     * connection on a thread of its own with no limits and no log.
      * 
      * @param port  port number, requires 0 <= port <= 65535
      * @param debug debug mode flag
@@ -71,10 +175,108 @@ public class MinesweeperServer {
      * @throws IOException if an error occurs opening the server socket
      */
     public MinesweeperServer(int port, boolean debug, Board board) throws IOException {
-	serverSocket = new ServerSocket(port);
+	this(port, debug, board, ServerSettings.DEFAULT);
+    }
+
+    /**
+     * Make a MinesweeperServer that listens for connections on port and serves
+     * them as the given settings say: with settings.getEventLoops() event-loop
+     * threads if there are some, otherwise with a thread per connection, virtual
+     * if settings.isVirtualThreads(), or a pool of workers if the limits of the
+     * settings have some. Connections above the limits are turned away with a
+     * busy message. On systems with SO_REUSEPORT, such as Linux, each of the
+     * settings.getAcceptors() acceptors gets a server socket of its own bound to
+     * port, and the system spreads the incoming connections over them, otherwise
+     * they share one.
+     * 
+     * @param port     port number, requires 0 <= port <= 65535
+     * @param debug    debug mode flag
+     * @param board    a Minesweeper board
+     * @param settings how the connections are served, logged and configured
+     * @throws IOException if an error occurs opening the server sockets
+     */
+    public MinesweeperServer(int port, boolean debug, Board board, ServerSettings settings) throws IOException {
+	int eventLoops = settings.getEventLoops();
+	int acceptors = settings.getAcceptors();
+	Limits limits = settings.getLimits();
+	ServerLog log = settings.getLog();
+	SocketSettings socketSettings = settings.getSocketSettings();
+	this.log = log;
+	this.socketSettings = socketSettings;
+	ServerSocket serverSocket = openServerSocket(port, limits.getBacklog(), eventLoops > 0, acceptors > 1,
+		socketSettings.getReceiveBufferSize());
+	boolean reusePort = acceptors > 1
+		&& serverSocket.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+	serverSockets = new ServerSocket[reusePort ? acceptors : 1];
+	serverSockets[0] = serverSocket;
+	for (int acceptor = 1; acceptor < serverSockets.length; acceptor++) {
+	    serverSockets[acceptor] = openServerSocket(serverSocket.getLocalPort(), limits.getBacklog(),
+		    eventLoops > 0, true, socketSettings.getReceiveBufferSize());
+	}
+	this.acceptors = acceptors;
 	this.debug = debug;
+	this.eventLoops = eventLoops;
+	if (settings.isVirtualThreads()) {
+	    this.connectionExecutor = newVirtualThreadExecutor(log);
+	} else if (limits.getWorkers() > 0) {
+	    this.connectionExecutor = new ThreadPoolExecutor(limits.getWorkers(), limits.getWorkers(), 0,
+		    TimeUnit.MILLISECONDS, limits.getQueueLength() > 0
+			    ? new ArrayBlockingQueue<>(limits.getQueueLength())
+			    : new SynchronousQueue<>());
+	} else {
+	    this.connectionExecutor = null;
+	}
+	this.limits = limits;
 	this.board = board;
-	this.clientCount = 0;
+    }
+
+    /**
+     * Opens a server socket bound to the given port.
+     * 
+     * @param port      port number, requires 0 <= port <= 65535
+     * @param backlog   length of the queue of connections not accepted yet, 0 for
+     *                  the default of the operating system
+     * @param channel   true for the socket of a ServerSocketChannel, to accept
+     *                  connections for event loops
+     * @param reusePort true to let other sockets bind to the same port, if the
+     *                  system supports it
+     * @param receiveBufferSize size of the receive buffers of the accepted
+     *                  sockets, 0 for the default of the operating system
+     * @return the bound server socket
+     * @throws IOException if an error occurs opening the server socket
+     */
+    private static ServerSocket openServerSocket(int port, int backlog, boolean channel, boolean reusePort,
+	    int receiveBufferSize) throws IOException {
+	ServerSocket serverSocket = channel ? ServerSocketChannel.open().socket() : new ServerSocket();
+	if (reusePort && serverSocket.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+	    serverSocket.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+	}
+	if (receiveBufferSize > 0) {
+	    // accepted sockets inherit it, and windows larger than 64K must be set before binding
+	    serverSocket.setReceiveBufferSize(receiveBufferSize);
+	}
+	serverSocket.bind(new InetSocketAddress(port), backlog);
+	return serverSocket;
+    }
+
+    /**
+     * Returns the number of connections turned away because the server already
+     * had limits.getMaxSessions() connections.
+     * 
+     * @return the number of connections rejected for the session limit
+     */
+    public long getSessionRejections() {
+	return sessionRejections.get();
+    }
+
+    /**
+     * Returns the number of connections turned away because all the workers were
+     * busy and limits.getQueueLength() connections were already waiting for them.
+     * 
+     * @return the number of connections rejected for the queue limit
+     */
+    public long getQueueRejections() {
+	return queueRejections.get();
     }
 
     /**
@@ -85,154 +287,1254 @@ public class MinesweeperServer {
      *                     individual clients do *not* terminate serve())
      */
     public void serve() throws IOException {
+	EventLoop[] loops = new EventLoop[eventLoops];
+	for (int loop = 0; loop < loops.length; loop++) {
+	    loops[loop] = new EventLoop();
+	    new Thread(loops[loop], "event-loop-" + loop).start();
+	}
+	for (int acceptor = 1; acceptor < acceptors; acceptor++) {
+	    ServerSocket serverSocket = serverSockets[acceptor % serverSockets.length];
+	    int firstLoop = acceptor;
+	    new Thread(() -> {
+		try {
+		    acceptConnections(serverSocket, loops, firstLoop);
+		} catch (IOException ioe) {
+		    log.log(Level.ERROR, "Acceptor stopped", ioe); // but keep the other acceptors running
+		}
+	    }, "acceptor-" + acceptor).start();
+	}
+	acceptConnections(serverSockets[0], loops, 0);
+    }
+
+    /**
+     * Accepts connections from the given server socket and hands them to the
+     * given event loops in turn, starting with firstLoop, or if there are none
+     * handles each of them on a thread of its own. Never returns unless an
+     * exception is thrown.
+     * 
+     * @param serverSocket one of serverSockets
+     * @param loops        the event loops of the server
+     * @param firstLoop    index of the event loop given the first connection
+     * @throws IOException if the server socket is broken
+     */
+    private void acceptConnections(ServerSocket serverSocket, EventLoop[] loops, int firstLoop)
+	    throws IOException {
+	if (loops.length > 0) {
+	    acceptIntoEventLoops(serverSocket.getChannel(), loops, firstLoop);
+	    return;
+	}
 	while (true) {
 	    // block until a client connects.
 	    Socket socket = serverSocket.accept();
+	    if (!admit(socket) || !configure(socket)) {
+		continue;
+	    }
 
 	    // handle every client in a separate thread.
-	    new Thread(new Runnable() {
+	    Runnable client = new Runnable() {
 
 		public void run() {
 		    try {
-			System.out.println("Startig a client in a new thread.....");
 			handleConnection(socket); // attempts to handle the client connection
 		    } catch (IOException ioe) {
-			ioe.printStackTrace(); // but don't terminate serve()
+			log.log(Level.ERROR, "Client connection failed", ioe); // but don't terminate serve()
 		    } finally {
 			try {
+			    clientCount.decrementAndGet();
 			    socket.close(); // attempt to close the socket
 			} catch (IOException e) {
-			    e.printStackTrace();
+			    log.log(Level.ERROR, "Closing the client connection failed", e);
 			}
 
 		    }
 		}
 
-	    }).start();
+	    };
+	    if (connectionExecutor == null) {
+		new Thread(client).start();
+		continue;
+	    }
+	    try {
+		connectionExecutor.execute(client);
+	    } catch (RejectedExecutionException queueFull) {
+		// all the workers are busy and the queue is full
+		queueRejections.incrementAndGet();
+		clientCount.decrementAndGet();
+		rejectConnection(socket);
+	    }
+
+	}
+    }
 
+    /**
+     * Counts a newly accepted connection in clientCount if the server has room for
+     * it, or turns it away with a busy message otherwise.
+     * 
+     * @param socket socket of a newly accepted connection
+     * @return true if the connection was admitted, false if it was turned away
+     */
+    private boolean admit(Socket socket) {
+	int sessions = clientCount.incrementAndGet();
+	if (limits.getMaxSessions() > 0 && sessions > limits.getMaxSessions()) {
+	    clientCount.decrementAndGet();
+	    sessionRejections.incrementAndGet();
+	    rejectConnection(socket);
+	    return false;
 	}
+	return true;
     }
 
     /**
-     * Handle a single client connection. Returns when client disconnects.
+     * Sets the options of socketSettings on the socket of a newly admitted
+     * connection. If an option cannot be set, for instance because the client
+     * already reset the connection, the connection is given up: it leaves
+     * clientCount and its socket is closed, but serve() goes on.
+     * 
+     * @param socket socket of the connection, counted in clientCount
+     * @return true if the options were set, false if the connection was given up
+     */
+    private boolean configure(Socket socket) {
+	try {
+	    socket.setTcpNoDelay(socketSettings.isTcpNoDelay());
+	    if (socketSettings.getSendBufferSize() > 0) {
+		socket.setSendBufferSize(socketSettings.getSendBufferSize());
+	    }
+	    return true;
+	} catch (IOException ioe) {
+	    log.log(Level.ERROR, "Configuring the client connection failed", ioe); // but don't terminate serve()
+	    clientCount.decrementAndGet();
+	    try {
+		socket.close();
+	    } catch (IOException e) {
+		log.log(Level.ERROR, "Closing the client connection failed", e);
+	    }
+	    return false;
+	}
+    }
+
+    /**
+     * Sends the busy message to a client the server has no room for and closes its
+     * connection.
+     * 
+     * @param socket socket of the connection, in blocking mode
+     */
+    private void rejectConnection(Socket socket) {
+	if (log.shouldLog(Level.INFO)) {
+	    log.log(Level.INFO, "Output to client: " + BUSY_MESSAGE + " (" + sessionRejections.get()
+		    + " for sessions, " + queueRejections.get() + " for the queue so far)");
+	}
+	try (socket) {
+	    socket.getOutputStream().write(BUSY_REPLY);
+	} catch (IOException ioe) {
+	    log.log(Level.ERROR, "Rejecting a client connection failed", ioe); // but don't terminate serve()
+	}
+    }
+
+    /**
+     * Returns an executor starting a virtual thread for every task. Virtual threads
+     * are only part of Java 21 and later, and of Java 19 and 20 with preview
+     * features enabled, so the executor is looked up at run time, and an executor
+     * reusing idle platform threads is returned where they are missing.
+     * 
+     * @param log log to tell that virtual threads are missing
+     * @return an executor running every task on a thread of its own
+     */
+    private static ExecutorService newVirtualThreadExecutor(ServerLog log) {
+	try {
+	    return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+	} catch (ReflectiveOperationException notSupported) {
+	    log.log(Level.INFO, "Virtual threads are not supported, using platform threads");
+	    return Executors.newCachedThreadPool();
+	}
+    }
+
+    /**
+     * Accepts connections from the given server channel and hands them to the
+     * given event loops in turn, starting with firstLoop. Never returns unless an
+     * exception is thrown.
+     * 
+     * @param serverChannel channel of one of serverSockets
+     * @param loops         the event loops of the server, at least one
+     * @param firstLoop     index of the event loop given the first connection
+     * @throws IOException if the server channel is broken
+     */
+    private void acceptIntoEventLoops(ServerSocketChannel serverChannel, EventLoop[] loops, int firstLoop)
+	    throws IOException {
+	for (int loop = firstLoop % loops.length; true; loop = (loop + 1) % loops.length) {
+	    // block until a client connects.
+	    SocketChannel channel = serverChannel.accept();
+	    if (admit(channel.socket()) && configure(channel.socket())) {
+		loops[loop].register(channel);
+	    }
+	}
+    }
+
+    /**
+     * Returns the hello message sent to a client when it connects.
+     * 
+     * @return the hello message
+     */
+    private String helloMessage() {
+	return String.format(
+		"Welcome to the Minesweeper Board: It has %s rows and %s columns. "
+			+ "There are %s clients including you. Type ‘help’ for help. \\r\\n",
+		board.getWidth(), board.getHeight(), clientCount.get());
+    }
+
+    /**
+     * Handle a single client connection. Returns when client disconnects, leaving
+     * the socket to be closed by the caller.
      * 
      * @param socket socket where the client is connected
      * @throws IOException if the connection encounters an error or terminates
      *                     unexpectedly
      */
     private void handleConnection(Socket socket) throws IOException {
-	System.out.println("Handling client connection.....\n");
-	final BufferedReader inFromClient = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-	final PrintWriter outToClient = new PrintWriter(socket.getOutputStream(), true);
-	String helloMessage = String.format(
-		"Welcome to the Minesweeper Board: It has %s rows and %s columns. "
-			+ "There are %s clients including you. Type ‘help’ for help. \\r\\n",
-		board.getWidth(), board.getHeight(), clientCount);
+	log.log(Level.INFO, "Handling client connection");
+	final LineReader inFromClient = new LineReader(socket.getInputStream());
+	final SocketWriter outToClient = new SocketWriter(socket.getOutputStream());
+	String helloMessage = helloMessage();
 
 	// Send a hello message to the client immediately after its client connection is
 	// established
-	clientCount += 1;
-	outToClient.println(helloMessage);
+	writeMessage(outToClient, helloMessage);
 	outToClient.flush();
 
-	// For rest of the interaction with the client
+	// For rest of the interaction with the client, answering every line the
+	// client already sent before sending the replies at once, or earlier once
+	// they pass MAXIMUM_BATCH_SIZE
+	Session session = new Session();
 	try {
 
-	    for (String line = inFromClient.readLine(); line != null; line = inFromClient.readLine()) {
+	    while (inFromClient.readLine()) {
 
-		System.out.println("input from client: " + line);
-		String output = handleRequest(line);
-		System.out.println("Output to client: \n" + output);
-		System.out.println("\n");
-		outToClient.println(output);
-		outToClient.flush();
-		if (output.equals("BOOM!") && !debug) {
+		byte[] line = inFromClient.getBuffer();
+		if (log.shouldLog(Level.DEBUG)) {
+		    log.log(Level.DEBUG, "input from client: " + new String(line, inFromClient.getStart(),
+			    inFromClient.getLength(), StandardCharsets.UTF_8));
+		}
+		session.command.parse(line, inFromClient.getStart(), inFromClient.getLength());
+		boolean boom = handleRequest(session.command, session, outToClient);
+		if (boom && !debug) {
 		    // Client dug at a tile that had a bomb and debug flag is off, end the client
-		    // connection by breaking from this loop
+		    // connection by breaking from this loop, with BOOM! as the last reply
+		    session.boardPending = false;
 		    break;
 		}
+		if (!inFromClient.hasLine() || outToClient.size() >= MAXIMUM_BATCH_SIZE) {
+		    writePendingBoard(session, outToClient);
+		    outToClient.flush();
+		}
 
 	    }
 
 	} catch (IOException exp) {
 	    // Client sent "bye" message, end the client connections
-	    System.err.println("Client connection is terminated");
+	    log.log(Level.INFO, "Client connection is terminated");
 
 	} finally {
-	    socket.close();
-	    clientCount -= 1;
-	    outToClient.close();
-	    inFromClient.close();
-
+	    try {
+		// send the replies to the lines before the end of the connection
+		writePendingBoard(session, outToClient);
+		outToClient.flush();
+	    } finally {
+		outToClient.close();
+	    }
 	}
     }
 
     /**
-     * Handler for client input, performing requested operations and returning an
-     * output message.
+     * Handler for client input, performing requested operations and writing an
+     * output message to the client. Replies are collected in outToClient as
+     * encoded bytes, boards rendered straight into its buffer, without going
+     * through a String. digs, flags and deflags apply to all their tiles at once
+     * and get a single reply, like a dig, flag or deflag, and so does a chord of
+     * all the neighbors of a tile. In compact mode, these only answer with the
+     * tiles they changed. In batch mode, replies that are
+     * the whole board are left pending, to be sent once by writePendingBoard
+     * after the other replies of the burst of lines the client sent.
      * 
-     * @param input message from client
-     * @return message to client
+     * @param command     command decoded from the message of the client
+     * @param session     state of the connection of the client
+     * @param outToClient output to the client
+     * @return true if the output message was BOOM!, false otherwise
      * @throws IOException, if the client connection is terminated.
      */
-    private String handleRequest(String input) throws IOException {
-	String regex = "(look)|(help)|(bye)|" + "(dig -?\\d+ -?\\d+)|(flag -?\\d+ -?\\d+)|(deflag -?\\d+ -?\\d+)";
-	String returnMessage = "";
-	String helpMessage = " Use any one of the command and follow "
-		+ "the correct syntax: - look, bye, help, dig x y, flag x y, deflag x y";
+    private boolean handleRequest(Command command, Session session, SocketWriter outToClient) throws IOException {
+	byte[] returnMessage = null;
+	boolean boom = false;
+	List<List<Integer>> changedTiles = session.compact ? new ArrayList<>() : null;
+	int x = command.getX();
+	int y = command.getY();
+	switch (command.getType()) {
+	case LOOK:
+	    // 'look' request, 'look x y w h' only returns the w * h tiles from (x,y)
+	    // and 'look since v' only the tiles changed since version v
+	    if (command.isSince()) {
+		writeChanges(outToClient, command.getVersion());
+	    } else if (command.isRegion()) {
+		if (log.shouldLog(Level.DEBUG)) {
+		    log.log(Level.DEBUG, "Output to client: viewport of the board at version " + board.getVersion());
+		}
+		writeViewport(outToClient, x, y, command.getWidth(), command.getHeight());
+	    } else if (session.batch) {
+		session.boardPending = true;
+	    } else {
+		if (log.shouldLog(Level.DEBUG)) {
+		    log.log(Level.DEBUG, "Output to client: board at version " + board.getVersion());
+		}
+		writeBoard(outToClient);
+	    }
+	    return false;
 
-	if (!input.matches(regex)) {
+	case HELP:
+	    // 'help' request
+	    returnMessage = HELP_REPLY;
+	    break;
+
+	case COMPACT:
+	    // 'compact' request: switch compact mode of the connection on or off
+	    session.compact = command.isOn();
+	    returnMessage = command.isOn() ? COMPACT_ON_REPLY : COMPACT_OFF_REPLY;
+	    break;
+
+	case BATCH:
+	    // 'batch' request: switch batch mode of the connection on or off, sending
+	    // the board left pending before the reply
+	    writePendingBoard(session, outToClient);
+	    session.batch = command.isOn();
+	    returnMessage = command.isOn() ? BATCH_ON_REPLY : BATCH_OFF_REPLY;
+	    break;
+
+	case BYE:
+	    // 'bye' request: end client connection
+	    throw new IOException("Terminate the client connection");
+
+	case DIG:
+	    // 'dig' request
+	    boolean isRevealed = session.compact ? board.digAt(x, y, changedTiles) : board.digAt(x, y);
+	    if (isRevealed) {
+		returnMessage = BOOM_REPLY;
+		boom = true;
+	    }
+	    break;
+
+	case FLAG:
+	    // 'flag' request
+	    if (session.compact) {
+		board.addFlagAt(x, y, changedTiles);
+	    } else {
+		board.addFlagAt(x, y);
+	    }
+	    break;
+
+	case DEFLAG:
+	    // 'deflag' request
+	    if (session.compact) {
+		board.removeFlagFrom(x, y, changedTiles);
+	    } else {
+		board.removeFlagFrom(x, y);
+	    }
+	    break;
+
+	case DIGS:
+	    // 'digs' request: dig all the tiles at once, BOOM! if any of them had a bomb
+	    List<List<Integer>> digs = positions(command);
+	    boolean isAnyRevealed = session.compact ? board.digAll(digs, changedTiles) : board.digAll(digs);
+	    if (isAnyRevealed) {
+		returnMessage = BOOM_REPLY;
+		boom = true;
+	    }
+	    break;
+
+	case CHORD:
+	    // 'chord' request: dig all the unflagged neighbors at once if the flags
+	    // around the tile match its count, BOOM! if any of them had a bomb
+	    boolean isAnyChordRevealed = session.compact ? board.chordAt(x, y, changedTiles) : board.chordAt(x, y);
+	    if (isAnyChordRevealed) {
+		returnMessage = BOOM_REPLY;
+		boom = true;
+	    }
+	    break;
+
+	case FLAGS:
+	    // 'flags' request
+	    if (session.compact) {
+		board.addFlags(positions(command), changedTiles);
+	    } else {
+		board.addFlags(positions(command));
+	    }
+	    break;
+
+	case DEFLAGS:
+	    // 'deflags' request
+	    if (session.compact) {
+		board.removeFlags(positions(command), changedTiles);
+	    } else {
+		board.removeFlags(positions(command));
+	    }
+	    break;
+
+	default:
 	    // invalid input: send a help message
-	    returnMessage = "This command is not supported." + helpMessage;
+	    returnMessage = UNSUPPORTED_REPLY;
 	}
-	String[] tokens = input.split(" ");
-	if (tokens[0].equals("look")) {
-	    // 'look' request
-	    returnMessage = board.toString();
 
-	} else if (tokens[0].equals("help")) {
-	    // 'help' request
-	    returnMessage = helpMessage;
+	if (returnMessage != null) {
+	    if (log.shouldLog(Level.DEBUG)) {
+		log.log(Level.DEBUG, "Output to client: " + new String(returnMessage, StandardCharsets.UTF_8).strip());
+	    }
+	    outToClient.write(returnMessage);
+	} else if (changedTiles != null) {
+	    if (log.shouldLog(Level.DEBUG)) {
+		log.log(Level.DEBUG, "Output to client: " + changedTiles.size() + " changed tiles");
+	    }
+	    writeTiles(outToClient, changedTiles);
+	} else if (session.batch) {
+	    session.boardPending = true;
+	} else {
+	    if (log.shouldLog(Level.DEBUG)) {
+		log.log(Level.DEBUG, "Output to client: board at version " + board.getVersion());
+	    }
+	    writeBoard(outToClient);
+	}
+	return boom;
+    }
 
-	} else if (tokens[0].equals("bye")) {
-	    // 'bye' request: end client connection
-	    throw new IOException("Terminate the client connection");
+    /**
+     * @param command a digs, flags or deflags
+     * @return the (x,y) coordinates of the tiles of the command, in its order
+     */
+    private static List<List<Integer>> positions(Command command) {
+	List<List<Integer>> positions = new ArrayList<>(command.getPointCount());
+	for (int index = 0; index < command.getPointCount(); index++) {
+	    positions.add(List.of(command.getPointX(index), command.getPointY(index)));
+	}
+	return positions;
+    }
 
+    /**
+     * Writes the board left pending by batch mode, if there is one, so that a
+     * burst of lines answered by the whole board is answered by the board once,
+     * at the end of the burst.
+     * 
+     * @param session     state of the connection of the client
+     * @param outToClient output to the client
+     */
+    private void writePendingBoard(Session session, SocketWriter outToClient) {
+	if (!session.boardPending) {
+	    return;
+	}
+	session.boardPending = false;
+	if (log.shouldLog(Level.DEBUG)) {
+	    log.log(Level.DEBUG, "Output to client: board at version " + board.getVersion() + " for a batch");
+	}
+	writeBoard(outToClient);
+    }
+
+    /**
+     * Writes the board followed by a line terminator to the client, copying its
+     * display straight into the buffer of outToClient.
+     * 
+     * @param outToClient output to the client
+     */
+    private void writeBoard(SocketWriter outToClient) {
+	byte[] buffer = outToClient.reserve(board.getRenderLength());
+	outToClient.commit(board.renderTo(buffer, outToClient.size()));
+	outToClient.write(NEWLINE, 0, NEWLINE.length);
+    }
+
+    /**
+     * Writes the tiles changed since the given version of the board to the
+     * client: a line "DELTA v n" with the current version v of the board and the
+     * number n of changed tiles, followed by a line "x y s" for each changed tile
+     * with its current symbol s. If the board no longer remembers all the changes
+     * since that version, writes a line "BOARD v" followed by the whole board at
+     * version v or later instead.
+     * 
+     * @param outToClient output to the client
+     * @param since       version of the board the client has, requires since >= 0
+     * @throws IOException if the connection encounters an error
+     */
+    private void writeChanges(SocketWriter outToClient, long since) throws IOException {
+	long version = board.getVersion();
+	Optional<Board.Delta> delta = board.changesSince(since);
+	if (delta.isPresent()) {
+	    if (log.shouldLog(Level.DEBUG)) {
+		log.log(Level.DEBUG, "Output to client: " + delta.get().size() + " changes up to version "
+			+ delta.get().getVersion());
+	    }
+	    outToClient.write(DELTA_HEADER);
+	    outToClient.writeNumber(delta.get().getVersion());
+	    outToClient.write(' ');
+	    outToClient.writeNumber(delta.get().size());
+	    outToClient.write(NEWLINE);
+	    if (delta.get().size() > 0) {
+		writeMessage(outToClient, delta.get().toString());
+	    }
 	} else {
+	    if (log.shouldLog(Level.DEBUG)) {
+		log.log(Level.DEBUG, "Output to client: board since version " + version);
+	    }
+	    outToClient.write(BOARD_HEADER);
+	    outToClient.writeNumber(version);
+	    outToClient.write(NEWLINE);
+	    writeBoard(outToClient);
+	}
+    }
+
+    /**
+     * Writes the given tiles of the board to the client: a line "CHANGES n" with
+     * the number n of tiles, followed by a line "x y s" for each tile with its
+     * current symbol s.
+     * 
+     * @param outToClient output to the client
+     * @param tiles       coordinates of tiles of the board
+     */
+    private void writeTiles(SocketWriter outToClient, List<List<Integer>> tiles) {
+	outToClient.write(CHANGES_HEADER, 0, CHANGES_HEADER.length);
+	outToClient.writeNumber(tiles.size());
+	outToClient.write(NEWLINE, 0, NEWLINE.length);
+	for (List<Integer> tile : tiles) {
+	    outToClient.writeNumber(tile.get(0));
+	    outToClient.write(' ');
+	    outToClient.writeNumber(tile.get(1));
+	    outToClient.write(' ');
+	    byte[] buffer = outToClient.reserve(1);
+	    outToClient.commit(board.renderTo(buffer, outToClient.size(), tile.get(0), tile.get(1), 1, 1));
+	    outToClient.write(NEWLINE, 0, NEWLINE.length);
+	}
+    }
+
+    /**
+     * Writes the given rectangle of the board followed by a line terminator to
+     * the client, copying it straight into the buffer of outToClient. The parts
+     * of the rectangle outside the board are left out.
+     * 
+     * @param outToClient output to the client
+     * @param x           x coordinate of the top left tile of the rectangle
+     * @param y           y coordinate of the top left tile of the rectangle
+     * @param width       number of columns of the rectangle, requires width >= 0
+     * @param height      number of rows of the rectangle, requires height >= 0
+     */
+    private void writeViewport(SocketWriter outToClient, int x, int y, int width, int height) {
+	byte[] buffer = outToClient.reserve(board.getRenderLength(x, y, width, height));
+	outToClient.commit(board.renderTo(buffer, outToClient.size(), x, y, width, height));
+	outToClient.write(NEWLINE, 0, NEWLINE.length);
+    }
+
+    /**
+     * Writes a message followed by a line terminator to the client.
+     * 
+     * @param outToClient stream to the client
+     * @param message     message to client
+     * @throws IOException if the connection encounters an error
+     */
+    private static void writeMessage(OutputStream outToClient, String message) throws IOException {
+	outToClient.write(message.getBytes(StandardCharsets.UTF_8));
+	outToClient.write(NEWLINE);
+    }
 
-	    int x = Integer.parseInt(tokens[1]);
-	    int y = Integer.parseInt(tokens[2]);
+    /**
+     * Encodes a message followed by a line terminator, to be sent as it is.
+     * 
+     * @param message message to client
+     * @return the bytes of the message and its line terminator
+     */
+    private static byte[] reply(String message) {
+	byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+	byte[] reply = Arrays.copyOf(bytes, bytes.length + NEWLINE.length);
+	System.arraycopy(NEWLINE, 0, reply, bytes.length, NEWLINE.length);
+	return reply;
+    }
 
-	    if (tokens[0].equals("dig")) {
-		// 'dig' request
-		boolean isRevealed = board.digAt(x, y);
-		if (isRevealed) {
-		    returnMessage = "BOOM!";
-		} else {
-		    returnMessage = board.toString();
+    /**
+     * State of the connection of one client, only used by the thread handling the
+     * connection.
+     */
+    private static final class Session {
+	/** True if dig, flag and deflag only answer with the tiles they changed. */
+	private boolean compact;
+	/** True if the whole board is only sent once for a burst of lines. */
+	private boolean batch;
+	/** True if a line of the current burst is answered by the whole board, not sent yet. */
+	private boolean boardPending;
+	/** Command every line of the connection is decoded into. */
+	private final Command command = new Command();
+    }
+
+    /**
+     * Reads the lines sent by a client as bytes, without decoding them into
+     * Strings. Lines end with "\n" or "\r\n", and the last line may have no line
+     * terminator. The current line is getBuffer()[getStart()] to
+     * getBuffer()[getStart() + getLength() - 1], without its terminator, until
+     * the next readLine.
+     */
+    private static final class LineReader {
+	private final InputStream in;
+	private byte[] buffer = new byte[INPUT_BUFFER_SIZE];
+	private int start;
+	private int length;
+	private int next;
+	private int end;
+
+	private LineReader(InputStream in) {
+	    this.in = in;
+	}
+
+	/**
+	 * Reads the next line, blocking until it is complete.
+	 * 
+	 * @return true if there was a next line, false if the client closed the
+	 *         connection
+	 * @throws IOException if the connection encounters an error
+	 */
+	private boolean readLine() throws IOException {
+	    start = next;
+	    int scanned = start;
+	    while (true) {
+		for (; scanned < end; scanned++) {
+		    if (buffer[scanned] == '\n') {
+			next = scanned + 1;
+			length = (scanned > start && buffer[scanned - 1] == '\r' ? scanned - 1 : scanned) - start;
+			return true;
+		    }
 		}
+		if (start > 0) {
+		    // move the beginning of the line to the front of the buffer
+		    System.arraycopy(buffer, start, buffer, 0, end - start);
+		    end -= start;
+		    scanned -= start;
+		    start = 0;
+		} else if (end == buffer.length) {
+		    // the line does not fit, make room for the rest of it
+		    buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+		}
+		int read = in.read(buffer, end, buffer.length - end);
+		if (read < 0) {
+		    next = end;
+		    length = end - start;
+		    return length > 0;
+		}
+		end += read;
+	    }
+	}
 
-	    } else if (tokens[0].equals("flag")) {
-		// 'flag' request
-		board.addFlagAt(x, y);
-		returnMessage = board.toString();
+	/**
+	 * Tells whether the next line was already sent whole by the client, taking
+	 * in the bytes the connection received so far without blocking. May move
+	 * the current line in the buffer.
+	 * 
+	 * @return true if readLine will return the next line without blocking
+	 * @throws IOException if the connection encounters an error
+	 */
+	private boolean hasLine() throws IOException {
+	    for (int scanned = next; scanned < end; scanned++) {
+		if (buffer[scanned] == '\n') {
+		    return true;
+		}
+	    }
+	    int available = in.available();
+	    if (available <= 0) {
+		return false;
+	    }
+	    // move the rest of the bytes to the front of the buffer and read the
+	    // available ones after them, which does not block
+	    System.arraycopy(buffer, next, buffer, 0, end - next);
+	    int scanned = end - next;
+	    end = scanned;
+	    start = 0;
+	    length = 0;
+	    next = 0;
+	    if (buffer.length - end < available) {
+		buffer = Arrays.copyOf(buffer, Math.max(2 * buffer.length, end + available));
+	    }
+	    end += Math.max(in.read(buffer, end, available), 0);
+	    for (; scanned < end; scanned++) {
+		if (buffer[scanned] == '\n') {
+		    return true;
+		}
+	    }
+	    return false;
+	}
 
-	    } else if (tokens[0].equals("deflag")) {
-		// 'deflag' request
-		board.removeFlagFrom(x, y);
-		returnMessage = board.toString();
+	/**
+	 * @return the buffer holding the current line
+	 */
+	private byte[] getBuffer() {
+	    return buffer;
+	}
+
+	/**
+	 * @return the index of the first byte of the current line in the buffer
+	 */
+	private int getStart() {
+	    return start;
+	}
+
+	/**
+	 * @return the number of bytes of the current line, without its terminator
+	 */
+	private int getLength() {
+	    return length;
+	}
+    }
+
+    /**
+     * A thread serving many connections without blocking: it waits on its selector
+     * until some of its connections can be read or written, and handles each of
+     * them in turn.
+     */
+    private final class EventLoop implements Runnable {
+	private final Selector selector;
+	private final Queue<SocketChannel> accepted = new ConcurrentLinkedQueue<>();
+
+	private EventLoop() throws IOException {
+	    selector = Selector.open();
+	}
+
+	/**
+	 * Hands a newly accepted connection over to this event loop. May be called
+	 * from any thread.
+	 * 
+	 * @param channel channel of the connection
+	 */
+	private void register(SocketChannel channel) {
+	    accepted.add(channel);
+	    selector.wakeup();
+	}
+
+	@Override
+	public void run() {
+	    while (true) {
+		try {
+		    selector.select();
+		    for (SocketChannel channel = accepted.poll(); channel != null; channel = accepted.poll()) {
+			try {
+			    new Connection(selector, channel);
+			} catch (IOException ioe) {
+			    log.log(Level.ERROR, "Client connection failed", ioe); // but keep serving the others
+			    // the connection leaves clientCount, as Connection.close does
+			    clientCount.decrementAndGet();
+			    channel.close();
+			}
+		    }
+		    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+		    while (keys.hasNext()) {
+			SelectionKey key = keys.next();
+			keys.remove();
+			Connection connection = (Connection) key.attachment();
+			try {
+			    if (key.isReadable()) {
+				connection.read();
+			    }
+			    if (key.isValid() && key.isWritable()) {
+				connection.write();
+			    }
+			} catch (IOException ioe) {
+			    log.log(Level.INFO, "Client connection is terminated");
+			    connection.close();
+			} catch (RuntimeException re) {
+			    log.log(Level.ERROR, "Client connection failed", re); // but keep serving the others
+			    connection.close();
+			}
+		    }
+		} catch (IOException ioe) {
+		    log.log(Level.ERROR, "Event loop failed", ioe); // but don't terminate the event loop
+		}
+	    }
+	}
+    }
+
+    /**
+     * A client connection served by an event loop. Bytes read from the client are
+     * collected in input until they make a whole line, and the replies to all the
+     * lines read at once wait in output until the client takes them, sent
+     * together with a single write whenever the client can take more. Once the
+     * replies pass MAXIMUM_BATCH_SIZE, the lines left in input wait until they
+     * are sent, and are handled the next time the client can take more. The
+     * connection stops reading while replies or lines are waiting, and is closed
+     * once the replies to a bye or, outside debug mode, a BOOM! are written, or
+     * once the client closed its side of the connection and the replies to all
+     * its lines are written.
+     */
+    private final class Connection {
+	private final SocketChannel channel;
+	private final SelectionKey key;
+	private final Session session = new Session();
+	private final SocketWriter output = new SocketWriter();
+	private ByteBuffer input = ByteBuffer.allocate(INPUT_BUFFER_SIZE);
+	private boolean closing;
+
+	/**
+	 * Registers the given channel with the given selector and sends it the
+	 * hello message.
+	 * 
+	 * @param selector selector of the event loop serving the connection
+	 * @param channel  channel of a newly accepted connection
+	 * @throws IOException if the connection encounters an error
+	 */
+	private Connection(Selector selector, SocketChannel channel) throws IOException {
+	    log.log(Level.INFO, "Handling client connection");
+	    this.channel = channel;
+	    channel.configureBlocking(false);
+	    key = channel.register(selector, SelectionKey.OP_READ, this);
+	    writeMessage(output, helloMessage());
+	    write();
+	}
+
+	/**
+	 * Reads what the client sent and handles every whole line of it, then
+	 * sends the replies to all of them at once. Stops after MAXIMUM_READS
+	 * reads, or once the replies pass MAXIMUM_BATCH_SIZE, leaving the rest to
+	 * the next turns of the connection. Once the client closed its side of
+	 * the connection, handles the last line even without a line terminator,
+	 * like LineReader, and closes the connection after sending the replies
+	 * still waiting. Requires no whole line left in input.
+	 * 
+	 * @throws IOException if the connection encounters an error
+	 */
+	private void read() throws IOException {
+	    for (int reads = 0; reads < MAXIMUM_READS; reads++) {
+		if (channel.read(input) < 0) {
+		    // the client closed its side, the rest of the input is its last line
+		    if (input.position() > 0 && !closing) {
+			handleLine(input.array(), 0, input.position());
+		    }
+		    input.clear();
+		    closing = true;
+		    break;
+		}
+		// a full buffer may have left more of the burst in the socket
+		boolean more = !input.hasRemaining();
+		handleLines();
+		if (!more || output.size() >= MAXIMUM_BATCH_SIZE) {
+		    break;
+		}
+	    }
+	    writePendingBoard(session, output);
+	    write();
+	}
+
+	/**
+	 * Handles the whole lines in input, in order, until the replies collected
+	 * in output pass MAXIMUM_BATCH_SIZE, and keeps the rest of input for later.
+	 */
+	private void handleLines() {
+	    int lineStart = 0;
+	    for (int end = 0; end < input.position() && output.size() < MAXIMUM_BATCH_SIZE; end++) {
+		if (input.get(end) == '\n') {
+		    int lineEnd = end > lineStart && input.get(end - 1) == '\r' ? end - 1 : end;
+		    if (!closing) {
+			handleLine(input.array(), lineStart, lineEnd - lineStart);
+		    }
+		    lineStart = end + 1;
+		}
+	    }
+	    input.flip().position(lineStart);
+	    input.compact();
+	    if (!input.hasRemaining() && !hasLine()) {
+		// the line does not fit, make room for the rest of it
+		input = ByteBuffer.allocate(2 * input.capacity()).put(input.flip());
+	    }
+	}
+
+	/**
+	 * @return true if input holds a whole line not handled yet
+	 */
+	private boolean hasLine() {
+	    for (int index = 0; index < input.position(); index++) {
+		if (input.get(index) == '\n') {
+		    return true;
+		}
+	    }
+	    return false;
+	}
+
+	/**
+	 * Handles one line from the client, collecting the reply in output.
+	 * 
+	 * @param line   bytes holding the message from the client
+	 * @param start  index of the first byte of the message in line
+	 * @param length number of bytes of the message, without its line
+	 *               terminator
+	 */
+	private void handleLine(byte[] line, int start, int length) {
+	    if (log.shouldLog(Level.DEBUG)) {
+		log.log(Level.DEBUG, "input from client: " + new String(line, start, length, StandardCharsets.UTF_8));
+	    }
+	    session.command.parse(line, start, length);
+	    try {
+		if (handleRequest(session.command, session, output) && !debug) {
+		    // Client dug at a tile that had a bomb and debug flag is off, end the
+		    // client connection once BOOM! is written, with BOOM! as the last reply
+		    session.boardPending = false;
+		    closing = true;
+		}
+	    } catch (IOException exp) {
+		// Client sent "bye" message, end the client connection
+		log.log(Level.INFO, "Client connection is terminated");
+		closing = true;
+	    }
+	}
+
+	/**
+	 * Writes as many of the waiting replies as the client takes without
+	 * blocking. Once they are all sent, handles the next batch of the lines
+	 * left in input, if there are some, and waits for the client to take its
+	 * replies before reading again.
+	 * 
+	 * @throws IOException if the connection encounters an error
+	 */
+	private void write() throws IOException {
+	    if (output.isEmpty() && !closing && hasLine()) {
+		handleLines();
+		writePendingBoard(session, output);
+	    }
+	    boolean written = output.writeTo(channel);
+	    if (written && closing) {
+		close();
+	    } else {
+		key.interestOps(written && !hasLine() ? SelectionKey.OP_READ : SelectionKey.OP_WRITE);
+	    }
+	}
+
+	/**
+	 * Closes the connection, if it is still open.
+	 * 
+	 * @throws IOException if the connection encounters an error while closing
+	 */
+	private void close() throws IOException {
+	    if (channel.isOpen()) {
+		clientCount.decrementAndGet();
+		key.cancel();
+		output.close();
+		channel.close();
+	    }
+	}
+    }
+
+    /**
+     * Immutable limits on the connections a server takes: the length of the
+     * backlog of connections the operating system queues before they are
+     * accepted, the number of connections admitted at once, and, for servers
+     * handling connections on a pool of workers, the number of workers and the
+     * number of connections waiting for a free worker, which count as admitted. A limit of 0 means none,
+     * or the default of the operating system for the backlog.
+     */
+    public static final class Limits {
+
+	/** No limits, connections are served by a thread of their own. */
+	public static final Limits NONE = new Limits(0, 0, 0, 0);
+
+	private final int backlog;
+	private final int maxSessions;
+	private final int workers;
+	private final int queueLength;
+
+	// Abstraction function
+	// AF(backlog, maxSessions, workers, queueLength): the limits above, 0 for
+	// none.
+
+	// Representation invariant
+	// All the fields are >= 0, and queueLength is 0 if workers is 0.
+
+	// Safety from representation exposure
+	// All the fields are private, final and immutable.
+
+	/**
+	 * Make limits on the connections of a server.
+	 * 
+	 * @param backlog     length of the queue of connections not accepted yet,
+	 *                    0 for the default of the operating system
+	 * @param maxSessions number of connections admitted at once, 0 for no limit
+	 * @param workers     number of threads serving connections, 0 for a thread
+	 *                    per connection
+	 * @param queueLength number of connections waiting for a free worker
+	 * @throws IllegalArgumentException if a limit is negative, or queueLength
+	 *                                  is positive without workers
+	 */
+	public Limits(int backlog, int maxSessions, int workers, int queueLength) {
+	    if (backlog < 0 || maxSessions < 0 || workers < 0 || queueLength < 0) {
+		throw new IllegalArgumentException("Limits must not be negative.");
+	    }
+	    if (workers == 0 && queueLength > 0) {
+		throw new IllegalArgumentException("Only connections waiting for workers are queued.");
+	    }
+	    this.backlog = backlog;
+	    this.maxSessions = maxSessions;
+	    this.workers = workers;
+	    this.queueLength = queueLength;
+	}
+
+	/**
+	 * @return the length of the queue of connections not accepted yet, 0 for
+	 *         the default of the operating system
+	 */
+	public int getBacklog() {
+	    return backlog;
+	}
+
+	/**
+	 * @return the number of connections admitted at once, 0 for no limit
+	 */
+	public int getMaxSessions() {
+	    return maxSessions;
+	}
+
+	/**
+	 * @return the number of threads serving connections, 0 for a thread per
+	 *         connection
+	 */
+	public int getWorkers() {
+	    return workers;
+	}
+
+	/**
+	 * @return the number of connections waiting for a free worker
+	 */
+	public int getQueueLength() {
+	    return queueLength;
+	}
+    }
 
+    /**
+     * Immutable options of the sockets of the connections of a server: whether
+     * Nagle's algorithm is turned off with TCP_NODELAY, so that every reply is
+     * sent as soon as it is written, and the sizes of the send and receive
+     * buffers of the operating system. A size of 0 means the default of the
+     * operating system.
+     */
+    public static final class SocketSettings {
+
+	/** TCP_NODELAY on and the default buffer sizes. */
+	public static final SocketSettings DEFAULT = new SocketSettings(true, 0, 0);
+
+	private final boolean tcpNoDelay;
+	private final int sendBufferSize;
+	private final int receiveBufferSize;
+
+	// Abstraction function
+	// AF(tcpNoDelay, sendBufferSize, receiveBufferSize): the options above, 0
+	// for the default of the operating system.
+
+	// Representation invariant
+	// sendBufferSize >= 0 and receiveBufferSize >= 0.
+
+	// Safety from representation exposure
+	// All the fields are private, final and immutable.
+
+	/**
+	 * Make options of the sockets of the connections of a server.
+	 * 
+	 * @param tcpNoDelay        true to turn Nagle's algorithm off
+	 * @param sendBufferSize    size in bytes of the send buffers, 0 for the
+	 *                          default of the operating system
+	 * @param receiveBufferSize size in bytes of the receive buffers, 0 for the
+	 *                          default of the operating system
+	 * @throws IllegalArgumentException if a size is negative
+	 */
+	public SocketSettings(boolean tcpNoDelay, int sendBufferSize, int receiveBufferSize) {
+	    if (sendBufferSize < 0 || receiveBufferSize < 0) {
+		throw new IllegalArgumentException("Buffer sizes must not be negative.");
 	    }
+	    this.tcpNoDelay = tcpNoDelay;
+	    this.sendBufferSize = sendBufferSize;
+	    this.receiveBufferSize = receiveBufferSize;
+	}
+
+	/**
+	 * @return true if Nagle's algorithm is turned off
+	 */
+	public boolean isTcpNoDelay() {
+	    return tcpNoDelay;
+	}
+
+	/**
+	 * @return the size in bytes of the send buffers, 0 for the default of the
+	 *         operating system
+	 */
+	public int getSendBufferSize() {
+	    return sendBufferSize;
 	}
 
-	return returnMessage;
+	/**
+	 * @return the size in bytes of the receive buffers, 0 for the default of
+	 *         the operating system
+	 */
+	public int getReceiveBufferSize() {
+	    return receiveBufferSize;
+	}
+    }
+
+    /**
+     * Immutable settings of how a server serves its connections: the number of
+     * event-loop threads, 0 for a thread per connection, whether those threads
+     * are virtual, the limits on the connections, the number of threads accepting
+     * them, the log of the server and the options of the sockets. Settings are
+     * made from DEFAULT by changing one setting at a time.
+     */
+    public static final class ServerSettings {
+
+	/** A platform thread per connection, no limits, one acceptor, no log and the default socket options. */
+	public static final ServerSettings DEFAULT = new ServerSettings(0, false, Limits.NONE, 1, ServerLog.NONE,
+		SocketSettings.DEFAULT);
+
+	private final int eventLoops;
+	private final boolean virtualThreads;
+	private final Limits limits;
+	private final int acceptors;
+	private final ServerLog log;
+	private final SocketSettings socketSettings;
+
+	// Abstraction function
+	// AF(eventLoops, virtualThreads, limits, acceptors, log, socketSettings):
+	// the settings above.
+
+	// Representation invariant
+	// eventLoops >= 0, acceptors >= 1, limits, log and socketSettings are not
+	// null. At most one of eventLoops > 0, virtualThreads and
+	// limits.getWorkers() > 0 holds.
+
+	// Safety from representation exposure
+	// All the fields are private and final. limits and socketSettings are
+	// immutable, and log is only written to by the server.
+
+	/**
+	 * Make settings of a server.
+	 * 
+	 * @throws IllegalArgumentException if a setting is out of range, or more
+	 *                                  than one of event loops, virtual threads
+	 *                                  and workers are asked for
+	 */
+	private ServerSettings(int eventLoops, boolean virtualThreads, Limits limits, int acceptors, ServerLog log,
+		SocketSettings socketSettings) {
+	    if (eventLoops < 0 || acceptors < 1) {
+		throw new IllegalArgumentException("Event loops must not be negative, and acceptors positive.");
+	    }
+	    if ((eventLoops > 0 ? 1 : 0) + (virtualThreads ? 1 : 0) + (limits.getWorkers() > 0 ? 1 : 0) > 1) {
+		throw new IllegalArgumentException("Event loops, virtual threads and workers are exclusive.");
+	    }
+	    this.eventLoops = eventLoops;
+	    this.virtualThreads = virtualThreads;
+	    this.limits = Objects.requireNonNull(limits);
+	    this.acceptors = acceptors;
+	    this.log = Objects.requireNonNull(log);
+	    this.socketSettings = Objects.requireNonNull(socketSettings);
+	}
+
+	/**
+	 * @param eventLoops number of event-loop threads, 0 for a thread per
+	 *                   connection
+	 * @return these settings with the given number of event-loop threads
+	 * @throws IllegalArgumentException if eventLoops is negative, or positive
+	 *                                  with virtual threads or workers
+	 */
+	public ServerSettings withEventLoops(int eventLoops) {
+	    return new ServerSettings(eventLoops, virtualThreads, limits, acceptors, log, socketSettings);
+	}
+
+	/**
+	 * @param virtualThreads true to serve each connection on a virtual thread,
+	 *                       where the Java runtime supports them
+	 * @return these settings with virtual threads or not
+	 * @throws IllegalArgumentException if virtualThreads is true with event
+	 *                                  loops or workers
+	 */
+	public ServerSettings withVirtualThreads(boolean virtualThreads) {
+	    return new ServerSettings(eventLoops, virtualThreads, limits, acceptors, log, socketSettings);
+	}
+
+	/**
+	 * @param limits limits on the connections
+	 * @return these settings with the given limits
+	 * @throws IllegalArgumentException if the limits have workers and there are
+	 *                                  event loops or virtual threads
+	 */
+	public ServerSettings withLimits(Limits limits) {
+	    return new ServerSettings(eventLoops, virtualThreads, limits, acceptors, log, socketSettings);
+	}
+
+	/**
+	 * @param acceptors number of threads accepting connections
+	 * @return these settings with the given number of acceptors
+	 * @throws IllegalArgumentException if acceptors < 1
+	 */
+	public ServerSettings withAcceptors(int acceptors) {
+	    return new ServerSettings(eventLoops, virtualThreads, limits, acceptors, log, socketSettings);
+	}
+
+	/**
+	 * With a log at INFO level or less, serving requests logs nothing and
+	 * allocates nothing for the log.
+	 * 
+	 * @param log log of the server
+	 * @return these settings with the given log
+	 */
+	public ServerSettings withLog(ServerLog log) {
+	    return new ServerSettings(eventLoops, virtualThreads, limits, acceptors, log, socketSettings);
+	}
+
+	/**
+	 * @param socketSettings options of the sockets of the connections
+	 * @return these settings with the given socket options
+	 */
+	public ServerSettings withSocketSettings(SocketSettings socketSettings) {
+	    return new ServerSettings(eventLoops, virtualThreads, limits, acceptors, log, socketSettings);
+	}
+
+	/**
+	 * @return the number of event-loop threads, 0 for a thread per connection
+	 */
+	public int getEventLoops() {
+	    return eventLoops;
+	}
+
+	/**
+	 * @return true if each connection is served on a virtual thread
+	 */
+	public boolean isVirtualThreads() {
+	    return virtualThreads;
+	}
+
+	/**
+	 * @return the limits on the connections
+	 */
+	public Limits getLimits() {
+	    return limits;
+	}
+
+	/**
+	 * @return the number of threads accepting connections
+	 */
+	public int getAcceptors() {
+	    return acceptors;
+	}
+
+	/**
+	 * @return the log of the server
+	 */
+	public ServerLog getLog() {
+	    return log;
+	}
+
+	/**
+	 * @return the options of the sockets of the connections
+	 */
+	public SocketSettings getSocketSettings() {
+	    return socketSettings;
+	}
     }
 
     /**
      * Start a MinesweeperServer using the given arguments.
      * 
      * <br>
-     * Usage: MinesweeperServer [--debug | --no-debug] [--port PORT] [--size
+     * Usage: MinesweeperServer [--debug | --no-debug] [--port PORT] [--event-loops
+     * LOOPS | --virtual-threads | --workers WORKERS [--queue QUEUE]] [--backlog
+     * BACKLOG] [--max-sessions SESSIONS] [--acceptors ACCEPTORS] [--log-level
+     * LEVEL] [--log-sample SAMPLE] [--log-file LOG] [--tcp-nodelay |
+     * --no-tcp-nodelay] [--send-buffer BYTES] [--receive-buffer BYTES] [--size
      * SIZE_X,SIZE_Y | --file FILE]
      * 
      * <br>
@@ -249,6 +1551,62 @@ public class MinesweeperServer {
      * 1234.
      * 
      * <br>
+     * LOOPS is an optional non-negative integer, specifying the number of
+     * event-loop threads serving all the connections. With 0, the default, every
+     * connection is served by a thread of its own. <br>
+     * E.g. "MinesweeperServer --event-loops 2" serves the clients with two
+     * event-loop threads.
+     * 
+     * <br>
+     * The --virtual-threads argument means every connection should be served by a
+     * virtual thread of its own, on a Java runtime that supports them. <br>
+     * E.g. "MinesweeperServer --virtual-threads" serves each client on a virtual
+     * thread.
+     * 
+     * <br>
+     * WORKERS is an optional positive integer, specifying the number of threads
+     * serving the connections, one at a time each. QUEUE is an optional
+     * non-negative integer, specifying how many connections may wait for a free
+     * worker, 0 by default. Connections above that are turned away with a busy
+     * message. <br>
+     * E.g. "MinesweeperServer --workers 64 --queue 128" serves 64 clients at once
+     * and lets 128 more wait.
+     * 
+     * <br>
+     * BACKLOG is an optional positive integer, specifying how many connections
+     * the operating system may queue before the server accepts them. SESSIONS is
+     * an optional positive integer, specifying how many clients may be connected
+     * at once. Clients above that are turned away with a busy message. <br>
+     * E.g. "MinesweeperServer --backlog 1024 --max-sessions 10000" lets 1024
+     * connections wait to be accepted and serves at most 10000 clients.
+     * 
+     * <br>
+     * ACCEPTORS is an optional positive integer, specifying the number of threads
+     * accepting connections, 1 by default. Where the system supports
+     * SO_REUSEPORT, each of them listens on a socket of its own bound to PORT.
+     * <br>
+     * E.g. "MinesweeperServer --acceptors 4" accepts connections on four threads.
+     * 
+     * <br>
+     * LEVEL is an optional level of the log, one of off, error, info and debug,
+     * info by default. At debug level every request and reply is logged, one in
+     * SAMPLE of them if SAMPLE is given, a positive integer. LOG is an optional
+     * file pathname the log is written to, instead of the console, by a
+     * background thread; it is rolled over to LOG.1 once it grows past 16 MiB.
+     * <br>
+     * E.g. "MinesweeperServer --log-level debug --log-sample 100 --log-file
+     * server.log" logs one request in a hundred to server.log.
+     * 
+     * <br>
+     * The --no-tcp-nodelay argument turns Nagle's algorithm back on for the
+     * connections, which have TCP_NODELAY set by default; --tcp-nodelay is the
+     * same as using neither. BYTES are optional positive integers, specifying the
+     * sizes of the send and receive buffers of the sockets of the connections,
+     * left to the operating system by default. <br>
+     * E.g. "MinesweeperServer --send-buffer 262144" gives each connection a send
+     * buffer of 256 KiB.
+     * 
+     * <br>
      * SIZE_X and SIZE_Y are optional positive integer arguments, specifying that a
      * random board of size SIZE_X*SIZE_Y should be generated. <br>
      * E.g. "MinesweeperServer --size 42,58" starts the server initialized with a
@@ -281,17 +1639,35 @@ public class MinesweeperServer {
      * If neither --file nor --size is given, generate a random board of size 10x10.
      * 
      * <br>
-     * Note that --file and --size may not be specified simultaneously.
+     * Note that --file and --size may not be specified simultaneously, nor two of
+     * --event-loops, --virtual-threads and --workers.
      * 
      * @param args arguments as described
      */
     public static void main(String[] args) {
-	// Command-line argument parsing is provided. Do not change this method.
+	// Command-line argument parsing of --debug, --port, --size and --file is
+	// provided. The options of how the server runs are parsed and range checked
+	// by parseNumber and parseLevel, and checked together by Limits and
+	// ServerSettings.
 	boolean debug = false;
 	int port = DEFAULT_PORT;
+	int eventLoops = 0;
+	boolean virtualThreads = false;
+	int workers = 0;
+	int queueLength = 0;
+	int backlog = 0;
+	int maxSessions = 0;
+	int acceptors = 1;
+	Level logLevel = Level.INFO;
+	int logSampling = 1;
+	Optional<File> logFile = Optional.empty();
+	boolean tcpNoDelay = true;
+	int sendBufferSize = 0;
+	int receiveBufferSize = 0;
 	int sizeX = DEFAULT_SIZE;
 	int sizeY = DEFAULT_SIZE;
 	Optional<File> file = Optional.empty();
+	ServerSettings settings;
 
 	Queue<String> arguments = new LinkedList<String>(Arrays.asList(args));
 	try {
@@ -307,6 +1683,34 @@ public class MinesweeperServer {
 			if (port < 0 || port > MAXIMUM_PORT) {
 			    throw new IllegalArgumentException("port " + port + " out of range");
 			}
+		    } else if (flag.equals("--event-loops")) {
+			eventLoops = parseNumber(flag, arguments, 0);
+		    } else if (flag.equals("--virtual-threads")) {
+			virtualThreads = true;
+		    } else if (flag.equals("--workers")) {
+			workers = parseNumber(flag, arguments, 1);
+		    } else if (flag.equals("--queue")) {
+			queueLength = parseNumber(flag, arguments, 0);
+		    } else if (flag.equals("--backlog")) {
+			backlog = parseNumber(flag, arguments, 1);
+		    } else if (flag.equals("--max-sessions")) {
+			maxSessions = parseNumber(flag, arguments, 1);
+		    } else if (flag.equals("--acceptors")) {
+			acceptors = parseNumber(flag, arguments, 1);
+		    } else if (flag.equals("--log-level")) {
+			logLevel = parseLevel(arguments.remove());
+		    } else if (flag.equals("--log-sample")) {
+			logSampling = parseNumber(flag, arguments, 1);
+		    } else if (flag.equals("--log-file")) {
+			logFile = Optional.of(new File(arguments.remove()));
+		    } else if (flag.equals("--tcp-nodelay")) {
+			tcpNoDelay = true;
+		    } else if (flag.equals("--no-tcp-nodelay")) {
+			tcpNoDelay = false;
+		    } else if (flag.equals("--send-buffer")) {
+			sendBufferSize = parseNumber(flag, arguments, 1);
+		    } else if (flag.equals("--receive-buffer")) {
+			receiveBufferSize = parseNumber(flag, arguments, 1);
 		    } else if (flag.equals("--size")) {
 			String[] sizes = arguments.remove().split(",");
 			sizeX = Integer.parseInt(sizes[0]);
@@ -328,20 +1732,81 @@ public class MinesweeperServer {
 		    throw new IllegalArgumentException("unable to parse number for " + flag);
 		}
 	    }
+	    settings = ServerSettings.DEFAULT.withEventLoops(eventLoops)
+		    .withVirtualThreads(virtualThreads)
+		    .withLimits(new Limits(backlog, maxSessions, workers, queueLength))
+		    .withAcceptors(acceptors)
+		    .withSocketSettings(new SocketSettings(tcpNoDelay, sendBufferSize, receiveBufferSize));
 	} catch (IllegalArgumentException iae) {
 	    System.err.println(iae.getMessage());
 	    System.err.println(
-		    "usage: MinesweeperServer [--debug | --no-debug] [--port PORT] [--size SIZE_X,SIZE_Y | --file FILE]");
+		    "usage: MinesweeperServer [--debug | --no-debug] [--port PORT] "
+			    + "[--event-loops LOOPS | --virtual-threads | --workers WORKERS [--queue QUEUE]] "
+			    + "[--backlog BACKLOG] [--max-sessions SESSIONS] [--acceptors ACCEPTORS] "
+			    + "[--log-level LEVEL] [--log-sample SAMPLE] [--log-file LOG] "
+			    + "[--tcp-nodelay | --no-tcp-nodelay] [--send-buffer BYTES] [--receive-buffer BYTES] "
+			    + "[--size SIZE_X,SIZE_Y | --file FILE]");
 	    return;
 	}
 
-	try {
-	    runMinesweeperServer(debug, file, sizeX, sizeY, port);
+	try (ServerLog log = new ServerLog(logLevel, logSampling, logFile)) {
+	    // serve() only returns by throwing, so the log is written out when the
+	    // process is stopped, or on the way out of this block if the server fails
+	    Runtime.getRuntime().addShutdownHook(new Thread(() -> closeLog(log), "server-log-shutdown"));
+	    runMinesweeperServer(debug, file, sizeX, sizeY, port, settings.withLog(log));
 	} catch (IOException ioe) {
 	    throw new RuntimeException(ioe);
 	}
     }
 
+    /**
+     * Writes out the messages left in the given log and closes it, from a
+     * shutdown hook, where exceptions are only printed.
+     * 
+     * @param log log of the server
+     */
+    private static void closeLog(ServerLog log) {
+	try {
+	    log.close();
+	} catch (IOException ioe) {
+	    ioe.printStackTrace();
+	}
+    }
+
+    /**
+     * Parses the argument of a numeric option of main.
+     * 
+     * @param flag      the option, for the error message
+     * @param arguments the arguments of main left after the option
+     * @param minimum   smallest value allowed
+     * @return the next argument, taken from arguments, as a number
+     * @throws NoSuchElementException   if there is no next argument
+     * @throws NumberFormatException    if the next argument is not an int
+     * @throws IllegalArgumentException if it is less than minimum
+     */
+    private static int parseNumber(String flag, Queue<String> arguments, int minimum) {
+	int number = Integer.parseInt(arguments.remove());
+	if (number < minimum) {
+	    throw new IllegalArgumentException(flag.substring(2).replace('-', ' ') + " " + number + " out of range");
+	}
+	return number;
+    }
+
+    /**
+     * Parses the argument of the --log-level option of main.
+     * 
+     * @param level name of a level, in any case
+     * @return the level of that name
+     * @throws IllegalArgumentException if there is no level of that name
+     */
+    private static Level parseLevel(String level) {
+	try {
+	    return Level.valueOf(level.toUpperCase(Locale.ROOT));
+	} catch (IllegalArgumentException unknownLevel) {
+	    throw new IllegalArgumentException("unknown log level: \"" + level + "\"");
+	}
+    }
+
     /**
      * Start a MinesweeperServer running on the specified port, with either a random
      * new board or a board loaded from a file.
@@ -361,6 +1826,31 @@ public class MinesweeperServer {
      */
     public static void runMinesweeperServer(boolean debug, Optional<File> file, int sizeX, int sizeY, int port)
 	    throws IOException {
+	try (ServerLog log = new ServerLog(Level.INFO, 1, Optional.empty())) {
+	    runMinesweeperServer(debug, file, sizeX, sizeY, port, ServerSettings.DEFAULT.withLog(log));
+	}
+    }
+
+    /**
+     * Start a MinesweeperServer like runMinesweeperServer(debug, file, sizeX,
+     * sizeY, port), serving the clients as the given settings say.
+     * 
+     * @param debug    The server will disconnect a client after a BOOM message if
+     *                 and only if debug is false.
+     * @param file     If file.isPresent(), start with a board loaded from the
+     *                 specified file, according to the input file format defined
+     *                 in the documentation for main(..).
+     * @param sizeX    If (!file.isPresent()), start with a random board with width
+     *                 sizeX (and require sizeX > 0).
+     * @param sizeY    If (!file.isPresent()), start with a random board with
+     *                 height sizeY (and require sizeY > 0).
+     * @param port     The network port on which the server should listen, requires
+     *                 0 <= port <= 65535.
+     * @param settings How the connections are served, logged and configured.
+     * @throws IOException if a network error occurs
+     */
+    public static void runMinesweeperServer(boolean debug, Optional<File> file, int sizeX, int sizeY, int port,
+	    ServerSettings settings) throws IOException {
 
 	Board board = new Board(10, 10);
 
@@ -394,8 +1884,8 @@ public class MinesweeperServer {
 	}
 
 	// create a Minesweeper server and run it.
-	MinesweeperServer server = new MinesweeperServer(port, debug, board);
-	System.out.println("Server thread started.....");
+	MinesweeperServer server = new MinesweeperServer(port, debug, board, settings);
+	settings.getLog().log(Level.INFO, "Server thread started");
 	server.serve();
 
     }
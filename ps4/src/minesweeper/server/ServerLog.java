@@ -0,0 +1,347 @@
+/* Copyright (c) 2007-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper.server;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Log of a MinesweeperServer. Messages have a level, and only the messages at
+ * the level of the log or more severe ones are logged; debug messages, logged
+ * for every request, can further be sampled so that only one in a given number
+ * of them is logged. Logging a message only puts it into a bounded ring of
+ * entries, and a background thread writes them out to the console or to a
+ * rolling file: once the file grows past its maximum size it is renamed to
+ * FILE.1, the older ones to FILE.2 and so on, and a new FILE is started. When
+ * the ring is full, messages are dropped rather than holding up the thread
+ * logging them.
+ * 
+ * Callers ask shouldLog() before building a message, so a message that is not
+ * logged costs no allocation at all.
+ */
+public final class ServerLog implements Closeable {
+
+    /** Levels of messages, from the most to the least severe, and OFF for logs that log nothing. */
+    public enum Level {
+	OFF, ERROR, INFO, DEBUG
+    }
+
+    /** A log that logs nothing. */
+    public static final ServerLog NONE = new ServerLog(Level.OFF);
+
+    /** Default number of entries the ring holds before messages are dropped. */
+    private static final int DEFAULT_CAPACITY = 8192;
+    /** Default size in bytes past which the log file is rolled. */
+    private static final long DEFAULT_MAXIMUM_SIZE = 16 * 1024 * 1024;
+    /** Default number of rolled files kept besides the log file. */
+    private static final int DEFAULT_ROLLED_FILES = 4;
+
+    /** Entry put into the ring by close() to stop the background thread. */
+    private static final Entry STOP = new Entry(Level.OFF, "", "");
+
+    private final Level level;
+    private final int sampling;
+    private final Optional<File> file;
+    private final long maximumSize;
+    private final int rolledFiles;
+    private final BlockingQueue<Entry> ring;
+    private final Thread writer;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    // owned by the writer thread
+    private Writer out;
+    private long size;
+
+    // Abstraction function
+    // AF(level, sampling, file, maximumSize, rolledFiles, ring, dropped): a log
+    // of the messages at level or more severe, one in sampling of the debug
+    // messages, written to file, or to the console if it is empty, and rolled
+    // once it is larger than maximumSize bytes, keeping rolledFiles older files.
+    // The entries in ring are logged but not written yet, and dropped messages
+    // were not logged because ring was full. Once closed, the entries logged so
+    // far are written out and nothing more is.
+
+    // Representation invariant
+    // sampling >= 1, maximumSize >= 1, rolledFiles >= 0. ring and writer are
+    // null iff level is OFF. size is the number of bytes written to out.
+
+    // Safety from representation exposure
+    // All the fields are private, the mutable ones are never handed out, and
+    // dropped is only handed out as a number.
+
+    // Thread safety argument
+    // Any thread may log: entries are handed to the writer thread through ring,
+    // a thread safe queue, and out and size are only used by the writer thread.
+    // The other fields are final and immutable, or thread safe. Any thread may
+    // close: closed lets only the first one put STOP into ring, and all of them
+    // wait for the writer thread to write out the entries before it.
+
+    /**
+     * Makes a log that logs nothing if level is OFF.
+     * 
+     * @param level level of the log, requires OFF
+     */
+    private ServerLog(Level level) {
+	this.level = level;
+	this.sampling = 1;
+	this.file = Optional.empty();
+	this.maximumSize = 1;
+	this.rolledFiles = 0;
+	this.ring = null;
+	this.writer = null;
+    }
+
+    /**
+     * Makes a log of the messages at the given level and the more severe ones,
+     * written to the given file, or to the console if there is none.
+     * 
+     * @param level    level of the log
+     * @param sampling one in sampling debug messages is logged, requires
+     *                 sampling >= 1
+     * @param file     file to write the log to, or empty for the console
+     * @throws IOException if the file cannot be opened
+     */
+    public ServerLog(Level level, int sampling, Optional<File> file) throws IOException {
+	this(level, sampling, file, DEFAULT_MAXIMUM_SIZE, DEFAULT_ROLLED_FILES, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Makes a log of the messages at the given level and the more severe ones,
+     * written to the given file, or to the console if there is none.
+     * 
+     * @param level       level of the log
+     * @param sampling    one in sampling debug messages is logged, requires
+     *                    sampling >= 1
+     * @param file        file to write the log to, or empty for the console
+     * @param maximumSize size in bytes past which the file is rolled, requires
+     *                    maximumSize >= 1
+     * @param rolledFiles number of rolled files kept, requires rolledFiles >= 0
+     * @param capacity    number of entries waiting to be written before messages
+     *                    are dropped, requires capacity >= 1
+     * @throws IOException if the file cannot be opened
+     */
+    ServerLog(Level level, int sampling, Optional<File> file, long maximumSize, int rolledFiles, int capacity)
+	    throws IOException {
+	if (sampling < 1 || maximumSize < 1 || rolledFiles < 0 || capacity < 1) {
+	    throw new IllegalArgumentException("invalid log settings");
+	}
+	this.level = level;
+	this.sampling = sampling;
+	this.file = file;
+	this.maximumSize = maximumSize;
+	this.rolledFiles = rolledFiles;
+	if (level == Level.OFF) {
+	    this.ring = null;
+	    this.writer = null;
+	    return;
+	}
+	this.ring = new ArrayBlockingQueue<>(capacity);
+	open();
+	this.writer = new Thread(this::writeEntries, "server-log");
+	writer.setDaemon(true);
+	writer.start();
+    }
+
+    /**
+     * @return the level of this log
+     */
+    public Level getLevel() {
+	return level;
+    }
+
+    /**
+     * Returns the number of messages that were not logged because the background
+     * thread had too many entries left to write.
+     * 
+     * @return the number of dropped messages
+     */
+    public long getDropped() {
+	return dropped.get();
+    }
+
+    /**
+     * Decides whether a message of the given level is to be logged, sampling the
+     * debug messages. Allocates nothing, so that callers can build their message
+     * only if it is.
+     * 
+     * @param messageLevel level of the message, requires not OFF
+     * @return true if the message is to be logged
+     */
+    public boolean shouldLog(Level messageLevel) {
+	if (messageLevel.compareTo(level) > 0) {
+	    return false;
+	}
+	return messageLevel != Level.DEBUG || sampling == 1
+		|| ThreadLocalRandom.current().nextInt(sampling) == 0;
+    }
+
+    /**
+     * Logs a message if it is at the level of this log or more severe, without
+     * sampling it again. Never blocks: the message is dropped if the background
+     * thread has too many entries left to write.
+     * 
+     * @param messageLevel level of the message, requires not OFF
+     * @param message      the message
+     */
+    public void log(Level messageLevel, String message) {
+	if (messageLevel.compareTo(level) > 0) {
+	    return;
+	}
+	if (!ring.offer(new Entry(messageLevel, Thread.currentThread().getName(), message))) {
+	    dropped.incrementAndGet();
+	}
+    }
+
+    /**
+     * Logs a message followed by the stack trace of the given exception, like
+     * log(messageLevel, message).
+     * 
+     * @param messageLevel level of the message, requires not OFF
+     * @param message      the message
+     * @param exception    the exception the message is about
+     */
+    public void log(Level messageLevel, String message, Throwable exception) {
+	if (messageLevel.compareTo(level) > 0) {
+	    return;
+	}
+	StringWriter trace = new StringWriter();
+	exception.printStackTrace(new PrintWriter(trace));
+	log(messageLevel, message + System.lineSeparator() + trace.toString().stripTrailing());
+    }
+
+    /**
+     * Writes out the messages logged so far, closing the log file, and stops the
+     * background thread. Messages logged afterwards are never written. Closing
+     * again, from any thread, only waits for the messages to be written out.
+     * 
+     * @throws IOException if the thread is interrupted while waiting
+     */
+    @Override
+    public void close() throws IOException {
+	if (writer == null) {
+	    return;
+	}
+	try {
+	    if (closed.compareAndSet(false, true)) {
+		ring.put(STOP);
+	    }
+	    writer.join();
+	} catch (InterruptedException ie) {
+	    Thread.currentThread().interrupt();
+	    throw new InterruptedIOException("interrupted while closing the log");
+	}
+    }
+
+    /**
+     * Writes the entries of the ring as they come, flushing whenever the ring
+     * is empty, until the STOP entry. Run by the background thread.
+     */
+    private void writeEntries() {
+	while (true) {
+	    try {
+		Entry entry = ring.take();
+		for (; entry != null; entry = ring.poll()) {
+		    if (entry == STOP) {
+			out.flush();
+			if (file.isPresent()) {
+			    out.close();
+			}
+			return;
+		    }
+		    write(entry);
+		}
+		out.flush();
+	    } catch (InterruptedException ie) {
+		return;
+	    } catch (IOException ioe) {
+		ioe.printStackTrace(); // but keep writing the next entries
+	    }
+	}
+    }
+
+    /**
+     * Writes one entry, rolling the file first if it has grown past its maximum
+     * size.
+     * 
+     * @param entry entry taken from the ring
+     * @throws IOException if the entry cannot be written
+     */
+    private void write(Entry entry) throws IOException {
+	if (file.isPresent() && size >= maximumSize) {
+	    out.close();
+	    roll();
+	    open();
+	}
+	String line = Instant.ofEpochMilli(entry.time) + " " + entry.level + " [" + entry.thread + "] "
+		+ entry.message + System.lineSeparator();
+	out.write(line);
+	size += line.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    /**
+     * Renames the log file to FILE.1 and each rolled file FILE.n to FILE.n+1,
+     * deleting the oldest one.
+     */
+    private void roll() {
+	File log = file.get();
+	new File(log.getPath() + "." + rolledFiles).delete();
+	for (int index = rolledFiles - 1; index >= 1; index--) {
+	    new File(log.getPath() + "." + index).renameTo(new File(log.getPath() + "." + (index + 1)));
+	}
+	if (rolledFiles > 0) {
+	    log.renameTo(new File(log.getPath() + ".1"));
+	} else {
+	    log.delete();
+	}
+    }
+
+    /**
+     * Opens out on the log file, appending to it, or on the console.
+     * 
+     * @throws IOException if the file cannot be opened
+     */
+    private void open() throws IOException {
+	if (file.isPresent()) {
+	    out = new BufferedWriter(
+		    new OutputStreamWriter(new FileOutputStream(file.get(), true), StandardCharsets.UTF_8));
+	    size = file.get().length();
+	} else {
+	    out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+	    size = 0;
+	}
+    }
+
+    /**
+     * A message waiting in the ring to be written.
+     */
+    private static final class Entry {
+	private final long time = System.currentTimeMillis();
+	private final Level level;
+	private final String thread;
+	private final String message;
+
+	private Entry(Level level, String thread, String message) {
+	    this.level = level;
+	    this.thread = thread;
+	    this.message = message;
+	}
+    }
+}
@@ -0,0 +1,247 @@
+/* Copyright (c) 2007-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Output of a client connection. The replies to the client are collected as
+ * bytes, already encoded, in a buffer borrowed from a pool shared by all the
+ * connections, and every reply collected so far is sent with a single write:
+ * to a blocking stream by flush(), or to a non-blocking channel by writeTo(),
+ * as much of it as the channel takes. Once everything is sent, the buffer goes
+ * back to the pool, so a connection with nothing to send holds no buffer.
+ * Buffers grown past MAXIMUM_POOLED_SIZE for a large reply are dropped instead,
+ * so that the pool never holds more than POOL_SIZE small buffers.
+ * Replies can also be rendered straight into the buffer with reserve() and
+ * commit().
+ */
+final class SocketWriter extends OutputStream {
+
+    /** Size of the buffers the pool starts with; they grow for larger replies. */
+    private static final int BUFFER_SIZE = 8192;
+    /** Largest number of idle buffers kept in the pool. */
+    private static final int POOL_SIZE = 1024;
+    /** Largest buffer kept in the pool, larger ones are left to the garbage collector. */
+    static final int MAXIMUM_POOLED_SIZE = 64 * 1024;
+    /** Idle buffers, shared by the writers of all the connections. */
+    private static final BlockingQueue<ByteBuffer> POOL = new ArrayBlockingQueue<>(POOL_SIZE);
+    /** Digits of the longest number written by writeNumber, "-9223372036854775808". */
+    private static final int MAXIMUM_DIGITS = 20;
+
+    private final OutputStream out;
+    private ByteBuffer buffer;
+    private int count;
+    private int sent;
+
+    // Abstraction function
+    // AF(out, buffer, count, sent): the bytes buffer[sent..count-1] collected
+    // for the client and not sent yet, to out if it is not null, or to the
+    // channel given to writeTo otherwise. There are none if buffer is null.
+
+    // Representation invariant
+    // 0 <= sent <= count <= buffer.capacity() if buffer is not null,
+    // sent == count == 0 otherwise. The buffers in the pool hold at most
+    // MAXIMUM_POOLED_SIZE bytes each.
+
+    // Safety from representation exposure
+    // out is handed in by the client and only written to. buffer is private,
+    // only its backing array is handed out by reserve, for writing the bytes
+    // before commit. The pool only holds buffers that no writer uses.
+
+    // Thread safety argument
+    // A SocketWriter is only used by the thread handling its connection. The
+    // pool is a thread safe queue.
+
+    /**
+     * Makes a writer sending the replies to a blocking stream when flushed.
+     * 
+     * @param out stream to the client
+     */
+    SocketWriter(OutputStream out) {
+	this.out = out;
+    }
+
+    /**
+     * Makes a writer sending the replies to the channel given to writeTo.
+     */
+    SocketWriter() {
+	this(null);
+    }
+
+    /**
+     * Returns the buffer the next bytes go to, with at least the given number of
+     * bytes free from index size(). The bytes written there are collected by
+     * commit.
+     * 
+     * @param length number of bytes needed, requires length >= 0
+     * @return the array of at least size() + length bytes the next bytes go to
+     */
+    byte[] reserve(int length) {
+	if (buffer == null) {
+	    buffer = POOL.poll();
+	    if (buffer == null) {
+		buffer = ByteBuffer.allocate(Math.max(BUFFER_SIZE, length));
+	    }
+	}
+	if (buffer.capacity() - count < length) {
+	    if (buffer.capacity() - (count - sent) >= length) {
+		// make room by moving the bytes not sent yet to the front
+		System.arraycopy(buffer.array(), sent, buffer.array(), 0, count - sent);
+	    } else {
+		ByteBuffer grown = ByteBuffer.allocate(Math.max(2 * buffer.capacity(), count - sent + length));
+		System.arraycopy(buffer.array(), sent, grown.array(), 0, count - sent);
+		// the outgrown buffer is left out of the pool, so that it fills up with
+		// buffers large enough for the replies, up to MAXIMUM_POOLED_SIZE
+		buffer = grown;
+	    }
+	    count -= sent;
+	    sent = 0;
+	}
+	return buffer.array();
+    }
+
+    /**
+     * @return the index in the array returned by reserve where the next bytes go
+     */
+    int size() {
+	return count;
+    }
+
+    /**
+     * Collects the given number of bytes written into the array returned by
+     * reserve, from index size().
+     * 
+     * @param length number of bytes written, requires length to be at most the
+     *               number of bytes last reserved
+     */
+    void commit(int length) {
+	count += length;
+    }
+
+    @Override
+    public void write(int b) {
+	reserve(1)[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+	System.arraycopy(bytes, offset, reserve(length), count, length);
+	count += length;
+    }
+
+    /**
+     * Writes the decimal digits of the given number, preceded by "-" if it is
+     * negative, without going through a String.
+     * 
+     * @param number the number to write
+     */
+    void writeNumber(long number) {
+	byte[] digits = reserve(MAXIMUM_DIGITS);
+	if (number == 0) {
+	    digits[count++] = '0';
+	    return;
+	}
+	if (number < 0) {
+	    digits[count++] = '-';
+	}
+	int end = count;
+	for (long rest = number; rest != 0; rest /= 10) {
+	    digits[end++] = (byte) ('0' + Math.abs(rest % 10));
+	}
+	// the digits came out last first
+	for (int left = count, right = end - 1; left < right; left++, right--) {
+	    byte digit = digits[left];
+	    digits[left] = digits[right];
+	    digits[right] = digit;
+	}
+	count = end;
+    }
+
+    /**
+     * @return true if there is nothing left to send
+     */
+    boolean isEmpty() {
+	return count == sent;
+    }
+
+    /**
+     * Sends every byte collected so far to the stream with a single write, and
+     * hands the buffer back to the pool. Requires a writer made with a stream.
+     * 
+     * @throws IOException if the stream encounters an error
+     */
+    @Override
+    public void flush() throws IOException {
+	if (!isEmpty()) {
+	    out.write(buffer.array(), sent, count - sent);
+	    out.flush();
+	}
+	release();
+    }
+
+    /**
+     * Sends as many of the bytes collected so far to the given channel as it
+     * takes without blocking, with a single write, and hands the buffer back to
+     * the pool once all of them are sent.
+     * 
+     * @param channel non-blocking channel to the client
+     * @return true if all the bytes are sent
+     * @throws IOException if the channel encounters an error
+     */
+    boolean writeTo(WritableByteChannel channel) throws IOException {
+	if (!isEmpty()) {
+	    buffer.limit(count).position(sent);
+	    channel.write(buffer);
+	    sent = buffer.position();
+	    buffer.clear();
+	}
+	if (isEmpty()) {
+	    release();
+	    return true;
+	}
+	return false;
+    }
+
+    /**
+     * Drops the bytes not sent yet and hands the buffer back to the pool. Does
+     * not close the stream or channel to the client, which is left to the owner
+     * of the connection.
+     */
+    @Override
+    public void close() {
+	release();
+    }
+
+    /**
+     * Hands the buffer back to the pool, if there is one.
+     */
+    private void release() {
+	if (buffer != null) {
+	    release(buffer);
+	    buffer = null;
+	}
+	count = 0;
+	sent = 0;
+    }
+
+    /**
+     * Hands the given buffer to the pool, unless the pool is full or the buffer
+     * was grown past MAXIMUM_POOLED_SIZE, when it is dropped.
+     * 
+     * @param idle buffer no writer uses any more
+     */
+    private static void release(ByteBuffer idle) {
+	if (idle.capacity() > MAXIMUM_POOLED_SIZE) {
+	    return;
+	}
+	idle.clear();
+	POOL.offer(idle);
+    }
+}
@@ -12,7 +12,12 @@ import java.util.List;
 import java.util.ArrayList;
 import java.util.Set;
 import java.util.HashSet;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -24,6 +29,14 @@ import java.io.IOException;
  */
 public class BoardTest {
 
+    // JSON files of all the test cases for digAt()
+    private static final List<String> DIG_TEST_CASES = List.of("ps4/test/test-cases/test-cases-1.json",
+	    "ps4/test/test-cases/test-cases-2.json", "ps4/test/test-cases/test-cases-3.json",
+	    "ps4/test/test-cases/test-cases-4.json", "ps4/test/test-cases/test-cases-5.json",
+	    "ps4/test/test-cases/test-cases-6.json", "ps4/test/test-cases/test-cases-7.json",
+	    "ps4/test/test-cases/test-cases-8.json", "ps4/test/test-cases/test-cases-15.json",
+	    "ps4/test/test-cases/test-cases-16.json", "ps4/test/test-cases/test-cases-17.json");
+
     // Testing strategy for the Board
     // Testing strategy for digAt(), addFlagAt(), removeFlagFrom()
     // Partition on tile status: tile is untouched, tile has been dug.
@@ -39,6 +52,42 @@ public class BoardTest {
     // flag.
     // Partition on number of untouched tiles in neighborhood: All untouched tiles,
     // some tiles are dug, all the tiles are dug.
+    // Partition on reveal strategy: flood fill, scanline, bitboard, region labels.
+    // Partition on concurrent digs: regions in one band, regions spanning several
+    // bands, digs revealing the same region.
+    // Partition on locking: band locks, lock free.
+
+    // Testing strategy for snapshot()
+    // Partition on changes since the previous snapshot: none, changes in some
+    // bands.
+    // Partition on readers of one version: one, several at once.
+    // Partition on render target: String, byte array, byte buffer, buffer too
+    // small.
+
+    // Testing strategy for renderTo()
+    // Partition on last change: none, dig, dig of a bomb, flag, deflag.
+    // Partition on rectangle: whole board, whole rows, inside the board, partly
+    // outside the board, outside the board.
+
+    // Testing strategy for changesSince()
+    // Partition on changes since the version: none, one, the same tile several
+    // times, a reveal, more than the journal remembers.
+    // Partition on version: earlier, current, later than the board.
+
+    // Testing strategy for digAt(), addFlagAt(), removeFlagFrom() reporting
+    // changed tiles
+    // Partition on changed tiles: none, one, a revealed region, dug neighbors of
+    // a removed bomb.
+
+    // Testing strategy for digAll(), addFlags(), removeFlags()
+    // Partition on tiles: one, several, the same tile twice, out of bound.
+    // Partition on result: no tile changed, some tiles changed, one of the digs
+    // dug a bomb.
+
+    // Testing strategy for chordAt()
+    // Partition on tile: untouched, dug, out of bound.
+    // Partition on flags around the tile: fewer than its count, as many, as many
+    // but on the wrong tiles.
 
     @Test(expected = AssertionError.class)
     public void testAssertionsEnabled() {
@@ -143,6 +192,18 @@ public class BoardTest {
 
     }
 
+    // Tile is untouched, no flag on it, no bomb - board is large and empty except
+    // for one bomb, so the revealed region spans almost the whole board
+    @Test
+    public void testDigLargeEmptyBoard() {
+	Board board = new Board(2000, 2000, Set.of(), Set.of(), Set.of(List.of(1000, 1000)));
+	assertFalse("expected no bomb under the dug tile", board.digAt(0, 0));
+	assertFalse(board.isUntouched(0, 0));
+	assertFalse(board.isUntouched(1999, 1999));
+	assertFalse(board.isUntouched(999, 999));
+	assertTrue("expected the bomb to stay hidden", board.isUntouched(1000, 1000));
+    }
+
     // Tile is untouched
     @Test
     public void testAddFlag1() {
@@ -190,6 +251,397 @@ public class BoardTest {
 	testRemoveFlagFromHelper(filePath);
     }
 
+    // Every dig test case, revealed span by span
+    @Test
+    public void testDigScanline() {
+	for (String filePath : DIG_TEST_CASES) {
+	    testdigAtHelper(filePath, RevealStrategy.SCANLINE);
+	}
+    }
+
+    // Every dig test case, revealed with row bitboards
+    @Test
+    public void testDigBitboard() {
+	for (String filePath : DIG_TEST_CASES) {
+	    testdigAtHelper(filePath, RevealStrategy.BITBOARD);
+	}
+    }
+
+    // Every dig test case, revealed from precomputed empty regions
+    @Test
+    public void testDigRegionLabels() {
+	for (String filePath : DIG_TEST_CASES) {
+	    testdigAtHelper(filePath, RevealStrategy.REGION_LABELS);
+	}
+    }
+
+    // Tiles are untouched, no flags, no bombs - the board is split by rows of
+    // bombs into regions spanning several bands, several threads dig every region
+    // at once, from its top and from its bottom row
+    @Test
+    public void testConcurrentDigs() throws InterruptedException {
+	int width = 100;
+	int height = 200;
+	Set<List<Integer>> bombs = new HashSet<>();
+	for (int bombY = 19; bombY < height; bombY += 20) {
+	    for (int bombX = 0; bombX < width; bombX++) {
+		bombs.add(List.of(bombX, bombY));
+	    }
+	}
+	Board board = new Board(width, height, Set.of(), Set.of(), bombs);
+
+	Thread[] diggers = new Thread[4];
+	for (int digger = 0; digger < diggers.length; digger++) {
+	    int digX = digger * 25;
+	    int firstRow = digger % 2 == 0 ? 1 : 17;
+	    diggers[digger] = new Thread(() -> {
+		for (int digY = firstRow; digY < height; digY += 20) {
+		    board.digAt(digX, digY);
+		}
+	    });
+	    diggers[digger].start();
+	}
+	for (Thread digger : diggers) {
+	    digger.join();
+	}
+
+	assertTrue("expected every tile without a bomb to be dug",
+		board.getDugTiles().size() == width * height - bombs.size());
+	assertTrue("expected the bombs to stay hidden", board.getFlaggedTiles().isEmpty() && board.isUntouched(0, 19));
+    }
+
+    // Every dig, add flag and remove flag test case, on lock free boards
+    @Test
+    public void testLockFree() {
+	for (String filePath : DIG_TEST_CASES) {
+	    Triple<Board, List<List<Integer>>, Board> test = parseJsonFile(filePath);
+	    test.boardBefore.setLockFree(true);
+	    compareThisWithThat(digAtMultipleLocations(test.boardBefore, test.input), test.boardAfter);
+	}
+	for (String filePath : List.of("ps4/test/test-cases/test-cases-9.json", "ps4/test/test-cases/test-cases-10.json",
+		"ps4/test/test-cases/test-cases-11.json")) {
+	    Triple<Board, List<List<Integer>>, Board> test = parseJsonFile(filePath);
+	    test.boardBefore.setLockFree(true);
+	    compareThisWithThat(addFlagAtMultipleLocations(test.boardBefore, test.input), test.boardAfter);
+	}
+	for (String filePath : List.of("ps4/test/test-cases/test-cases-12.json", "ps4/test/test-cases/test-cases-13.json",
+		"ps4/test/test-cases/test-cases-14.json")) {
+	    Triple<Board, List<List<Integer>>, Board> test = parseJsonFile(filePath);
+	    test.boardBefore.setLockFree(true);
+	    compareThisWithThat(removeFlagFromMultipleLocations(test.boardBefore, test.input), test.boardAfter);
+	}
+    }
+
+    // Lock free board, bitboard reveal strategy
+    @Test(expected = IllegalArgumentException.class)
+    public void testLockFreeBitboard() {
+	Board board = new Board(5, 5, Set.of(), Set.of(), Set.of());
+	board.setLockFree(true);
+	board.setRevealStrategy(RevealStrategy.BITBOARD);
+    }
+
+    // Tiles are untouched, lock free board - several threads flag and unflag the
+    // same tiles at once while another one digs around them
+    @Test
+    public void testConcurrentFlagsLockFree() throws InterruptedException {
+	Board board = new Board(40, 40, Set.of(), Set.of(), Set.of(List.of(20, 20)));
+	board.setLockFree(true);
+
+	Thread[] flaggers = new Thread[4];
+	for (int flagger = 0; flagger < flaggers.length; flagger++) {
+	    flaggers[flagger] = new Thread(() -> {
+		for (int round = 0; round < 1000; round++) {
+		    for (int flagX = 0; flagX < 40; flagX++) {
+			board.addFlagAt(flagX, 10);
+			board.removeFlagFrom(flagX, 10);
+		    }
+		}
+	    });
+	    flaggers[flagger].start();
+	}
+	board.digAt(0, 0);
+	for (Thread flagger : flaggers) {
+	    flagger.join();
+	}
+
+	assertTrue("expected every flag to be removed", board.getFlaggedTiles().isEmpty());
+	assertTrue("expected the bomb to stay hidden", board.isUntouched(20, 20));
+	assertFalse(board.isUntouched(0, 0));
+    }
+    // Tiles are untouched, no flags, no bombs - one thread reveals the whole board
+    // with a single dig while another one keeps observing it
+    @Test
+    public void testConcurrentObservers() throws InterruptedException {
+	Board board = new Board(60, 60, Set.of(), Set.of(), Set.of());
+	Thread digger = new Thread(() -> board.digAt(30, 30));
+	digger.start();
+
+	int dugTiles = 0;
+	while (dugTiles == 0) {
+	    dugTiles = board.getDugTiles().size();
+	}
+	digger.join();
+
+	assertEquals("expected the whole region to appear at once", 60 * 60, dugTiles);
+    }
+
+    // Tiles are untouched, one bomb - snapshots before and after a dig far from
+    // the bomb, and again without any change in between
+    @Test
+    public void testSnapshot() {
+	Board board = new Board(5, 40, Set.of(), Set.of(), Set.of(List.of(2, 20)));
+	Board.Snapshot before = board.snapshot();
+	String boardBefore = board.toString();
+
+	board.digAt(0, 0);
+	Board.Snapshot after = board.snapshot();
+
+	assertEquals("expected the snapshot not to change", boardBefore, before.toString());
+	assertTrue("expected a later version", after.getVersion() > before.getVersion());
+	assertEquals(board.toString(), after.toString());
+	assertEquals(board.getDugTiles(), after.getDugTiles());
+	assertTrue(before.getDugTiles().isEmpty());
+	assertFalse(before.equals(after));
+
+	Board.Snapshot again = board.snapshot();
+	assertEquals(after.getVersion(), again.getVersion());
+	assertEquals(after, again);
+	assertEquals(after.hashCode(), again.hashCode());
+    }
+
+    // Tiles are untouched, no bombs - several threads render the same version at
+    // once, then a flag changes the version
+    @Test
+    public void testRenderCache() throws InterruptedException {
+	Board board = new Board(50, 50, Set.of(), Set.of(), Set.of());
+	String[] renders = new String[4];
+	Thread[] readers = new Thread[renders.length];
+	for (int reader = 0; reader < readers.length; reader++) {
+	    int index = reader;
+	    readers[reader] = new Thread(() -> renders[index] = board.toString());
+	    readers[reader].start();
+	}
+	for (Thread reader : readers) {
+	    reader.join();
+	}
+	for (String render : renders) {
+	    assertSame("expected one render per version", renders[0], render);
+	}
+
+	long version = board.getVersion();
+	board.addFlagAt(1, 1);
+	assertTrue("expected a later version", board.getVersion() > version);
+	assertTrue(board.isFlagged(1, 1));
+	assertFalse(renders[0].equals(board.toString()));
+	assertSame(board.toString(), board.toString());
+    }
+
+    // Tiles are dug, flagged, untouched, some with bombs around - the render of a
+    // snapshot copied into buffers matches its string representation
+    @Test
+    public void testRenderToBuffers() {
+	Board board = new Board(4, 3, Set.of(), Set.of(List.of(3, 2)), Set.of(List.of(3, 0)));
+	board.digAt(0, 2);
+	Board.Snapshot snapshot = board.snapshot();
+	String expected = "    1 -\n    1 1\n      F";
+
+	assertEquals(expected, snapshot.toString());
+	assertEquals(expected.length(), snapshot.getRenderLength());
+
+	byte[] bytes = new byte[expected.length() + 2];
+	assertEquals(expected.length(), snapshot.renderTo(bytes, 2));
+	assertEquals(expected, new String(bytes, 2, expected.length(), StandardCharsets.US_ASCII));
+
+	ByteBuffer buffer = ByteBuffer.allocate(expected.length());
+	snapshot.renderTo(buffer);
+	assertEquals(expected, new String(buffer.array(), StandardCharsets.US_ASCII));
+    }
+
+    // Tiles are untouched, flagged, some with bombs - the display copied after
+    // every kind of change matches the string representation
+    @Test
+    public void testRenderToAfterChanges() {
+	Board board = new Board(6, 5, Set.of(), Set.of(List.of(5, 4)), Set.of(List.of(2, 2), List.of(4, 0)));
+	byte[] buffer = new byte[board.getRenderLength()];
+	assertEquals(board.toString(), renderOf(board, buffer));
+
+	board.digAt(0, 0);
+	assertEquals(board.toString(), renderOf(board, buffer));
+	board.digAt(2, 2);
+	assertEquals(board.toString(), renderOf(board, buffer));
+	board.addFlagAt(4, 0);
+	assertEquals(board.toString(), renderOf(board, buffer));
+	board.removeFlagFrom(5, 4);
+	assertEquals(board.toString(), renderOf(board, buffer));
+	assertTrue(renderOf(board, buffer).startsWith("      1 F -"));
+    }
+
+    // Tiles are dug, untouched, flagged - rectangles of a board spanning several
+    // bands copied from the display
+    @Test
+    public void testRenderRegion() {
+	Board board = new Board(5, 40, Set.of(), Set.of(List.of(1, 17)), Set.of(List.of(4, 18)));
+	board.digAt(0, 0);
+	String[] rows = board.toString().split("\n");
+	byte[] buffer = new byte[board.getRenderLength()];
+
+	int length = board.renderTo(buffer, 0, 0, 0, 5, 40);
+	assertEquals(board.toString(), new String(buffer, 0, length, StandardCharsets.US_ASCII));
+
+	length = board.renderTo(buffer, 0, 0, 15, 5, 4);
+	assertEquals(String.join("\n", rows[15], rows[16], rows[17], rows[18]),
+		new String(buffer, 0, length, StandardCharsets.US_ASCII));
+
+	length = board.renderTo(buffer, 0, 1, 16, 3, 3);
+	assertEquals(String.join("\n", rows[16].substring(2, 7), rows[17].substring(2, 7), rows[18].substring(2, 7)),
+		new String(buffer, 0, length, StandardCharsets.US_ASCII));
+
+	assertEquals(7, board.getRenderLength(3, 38, 4, 4));
+	length = board.renderTo(buffer, 0, 3, 38, 4, 4);
+	assertEquals(rows[38].substring(6) + "\n" + rows[39].substring(6),
+		new String(buffer, 0, length, StandardCharsets.US_ASCII));
+
+	assertEquals(0, board.getRenderLength(5, 0, 2, 2));
+	assertEquals(0, board.renderTo(buffer, 0, -3, 2, 3, 2));
+    }
+
+    // Tiles are flagged, deflagged and dug - deltas from earlier, current, later
+    // and forgotten versions
+    @Test
+    public void testChangesSince() {
+	Board board = new Board(3, 3, Set.of(), Set.of(), Set.of(List.of(2, 2)));
+	assertEquals(0, board.getVersion());
+
+	board.addFlagAt(0, 0);
+	Board.Delta delta = board.changesSince(0).get();
+	assertEquals(1, delta.getVersion());
+	assertEquals(List.of(List.of(0, 0)), delta.getTiles());
+	assertEquals("0 0 F", delta.toString());
+
+	board.removeFlagFrom(0, 0);
+	board.addFlagAt(0, 0);
+	assertEquals(3, board.getVersion());
+	assertEquals("0 0 F", board.changesSince(0).get().toString());
+	assertEquals(0, board.changesSince(3).get().size());
+	assertFalse(board.changesSince(4).isPresent());
+
+	board.removeFlagFrom(0, 0);
+	board.digAt(0, 0);
+	delta = board.changesSince(4).get();
+	assertEquals(8, delta.size());
+	assertEquals(String.join("\n", "0 0  ", "1 0  ", "2 0  ", "0 1  ", "1 1 1", "2 1 1", "0 2  ", "1 2 1"),
+		delta.toString());
+
+	Board large = new Board(8, 8, Set.of(), Set.of(), Set.of());
+	for (int change = 0; change < 33; change++) {
+	    large.addFlagAt(7, 7);
+	    large.removeFlagFrom(7, 7);
+	}
+	assertFalse(large.changesSince(0).isPresent());
+	assertEquals("7 7 -", large.changesSince(2).get().toString());
+    }
+
+    // Tiles are flagged, deflagged, dug around a bomb and revealed - the changed
+    // tiles of each operation
+    @Test
+    public void testReportedChanges() {
+	Board board = new Board(3, 3, Set.of(), Set.of(), Set.of(List.of(2, 2)));
+	List<List<Integer>> changedTiles = new ArrayList<>();
+	assertTrue(board.addFlagAt(1, 1, changedTiles));
+	assertEquals(List.of(List.of(1, 1)), changedTiles);
+
+	changedTiles.clear();
+	assertFalse(board.addFlagAt(1, 1, changedTiles));
+	assertEquals(List.of(), changedTiles);
+
+	assertTrue(board.removeFlagFrom(1, 1, changedTiles));
+	assertEquals(List.of(List.of(1, 1)), changedTiles);
+
+	changedTiles.clear();
+	board.digAt(2, 1, changedTiles);
+	assertEquals(List.of(List.of(2, 1)), changedTiles);
+
+	changedTiles.clear();
+	assertFalse(board.digAt(0, 0, changedTiles));
+	assertEquals(List.of(List.of(0, 0), List.of(1, 0), List.of(2, 0), List.of(0, 1), List.of(1, 1), List.of(0, 2),
+		List.of(1, 2)), changedTiles);
+
+	changedTiles.clear();
+	assertTrue(board.digAt(2, 2, changedTiles));
+	assertEquals(List.of(List.of(1, 1), List.of(2, 1), List.of(1, 2), List.of(2, 2)), changedTiles);
+	assertEquals("     \n     \n     ", board.toString());
+    }
+
+    // Several tiles are flagged, deflagged and dug at once, the same tile twice,
+    // out of bound, around a bomb and on it - the changed tiles of all the
+    // operations together
+    @Test
+    public void testBulkOperations() {
+	Board board = new Board(4, 4, Set.of(), Set.of(), Set.of(List.of(3, 3)));
+	List<List<Integer>> changedTiles = new ArrayList<>();
+	assertTrue(board.addFlags(List.of(List.of(1, 1), List.of(0, 0), List.of(0, 0), List.of(9, 9)), changedTiles));
+	assertEquals(List.of(List.of(0, 0), List.of(1, 1)), changedTiles);
+
+	changedTiles.clear();
+	assertFalse(board.addFlags(List.of(List.of(0, 0)), changedTiles));
+	assertEquals(List.of(), changedTiles);
+
+	assertTrue(board.removeFlags(List.of(List.of(1, 1), List.of(2, 2)), changedTiles));
+	assertEquals(List.of(List.of(1, 1)), changedTiles);
+
+	changedTiles.clear();
+	assertFalse(board.digAll(List.of(List.of(2, 3), List.of(3, 2)), changedTiles));
+	assertEquals(List.of(List.of(3, 2), List.of(2, 3)), changedTiles);
+	assertEquals("F - - -\n- - - -\n- - - 1\n- - 1 -", board.toString());
+
+	assertTrue(board.digAll(List.of(List.of(0, 3), List.of(3, 3))));
+	assertEquals("F      \n       \n       \n       ", board.toString());
+    }
+
+    // A dug tile is chorded with too few flags, with its bomb flagged and with
+    // the wrong tile flagged, an untouched tile and a tile out of bound are
+    // chorded - the changed tiles of the chord
+    @Test
+    public void testChord() {
+	Board board = new Board(3, 3, Set.of(List.of(1, 1)), Set.of(), Set.of(List.of(0, 0)));
+	List<List<Integer>> changedTiles = new ArrayList<>();
+	assertFalse(board.chordAt(1, 1, changedTiles));
+	assertEquals(List.of(), changedTiles);
+	assertFalse(board.chordAt(0, 2));
+	assertFalse(board.chordAt(3, 1));
+	assertEquals("- - -\n- 1 -\n- - -", board.toString());
+
+	board.addFlagAt(0, 0);
+	assertFalse(board.chordAt(1, 1, changedTiles));
+	assertEquals(List.of(List.of(1, 0), List.of(2, 0), List.of(0, 1), List.of(2, 1), List.of(0, 2), List.of(1, 2),
+		List.of(2, 2)), changedTiles);
+	assertEquals("F 1  \n1 1  \n     ", board.toString());
+
+	Board wrongFlag = new Board(3, 3, Set.of(List.of(1, 1)), Set.of(List.of(2, 2)), Set.of(List.of(0, 0)));
+	assertTrue(wrongFlag.chordAt(1, 1));
+	assertEquals("     \n     \n    F", wrongFlag.toString());
+    }
+
+    // Tiles are untouched - the buffer is one byte short of the render
+    @Test(expected = IllegalArgumentException.class)
+    public void testRenderToSmallBuffer() {
+	Board board = new Board(3, 3, Set.of(), Set.of(), Set.of());
+	board.snapshot().renderTo(new byte[16], 0);
+    }
+
+    /**
+     * Copies the display of the given board into the given buffer and returns it
+     * as a string.
+     * 
+     * @param board,  a Minesweeper board
+     * @param buffer, a buffer of at least board.getRenderLength() bytes
+     * @return the string representation copied by renderTo
+     */
+    private String renderOf(Board board, byte[] buffer) {
+	int length = board.renderTo(buffer, 0);
+	return new String(buffer, 0, length, StandardCharsets.US_ASCII);
+    }
+
     /**
      * This methods attempts loads the JSON file from the specifed and digs at the
      * mentioned locations and checks if the actual board and expected board are
@@ -201,7 +653,20 @@ public class BoardTest {
      *         mentioned in the input list
      */
     private void testdigAtHelper(String filePath) {
+	testdigAtHelper(filePath, RevealStrategy.FLOOD_FILL);
+    }
+
+    /**
+     * This methods attempts loads the JSON file from the specifed and digs at the
+     * mentioned locations using the given reveal strategy and checks if the actual
+     * board and expected board are equal
+     * 
+     * @param filePath, a path to a JSON file
+     * @param strategy, the reveal strategy of the board before the digs
+     */
+    private void testdigAtHelper(String filePath, RevealStrategy strategy) {
 	Triple<Board, List<List<Integer>>, Board> test = parseJsonFile(filePath);
+	test.boardBefore.setRevealStrategy(strategy);
 	Board actualBoard = digAtMultipleLocations(test.boardBefore, test.input);
 	Board expectedBoard = test.boardAfter;
 	compareThisWithThat(actualBoard, expectedBoard);
@@ -0,0 +1,169 @@
+/* Copyright (c) 2007-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * Tests for decoding the lines sent by clients into commands.
+ */
+public class CommandTest {
+
+    // Testing strategy for parse()
+    // Partition on command: look, look x y w h, look since v, help, bye, dig,
+    // flag, deflag, digs, flags, deflags, chord, compact on, compact off, batch
+    // on, batch off, not a command.
+    // Partition on number of tiles of digs, flags, deflags: 1, > 1, more than
+    // held by a previous line.
+    // Partition on numbers: zero, positive, negative, largest and smallest int,
+    // too large for an int, too large for a long.
+    // Partition on position of the line in the buffer: at the start, after other
+    // bytes.
+    // Partition on previous line: none, a command with other arguments, a
+    // command with more tiles.
+
+    @Test(expected = AssertionError.class)
+    public void testAssertionsEnabled() {
+	assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // look, look x y w h, look since v, after other bytes, after other commands
+    @Test
+    public void testLook() {
+	Command command = new Command();
+	assertTrue(parse(command, "look 1 -2 3 4"));
+	assertEquals(Command.Type.LOOK, command.getType());
+	assertTrue(command.isRegion());
+	assertEquals(1, command.getX());
+	assertEquals(-2, command.getY());
+	assertEquals(3, command.getWidth());
+	assertEquals(4, command.getHeight());
+
+	assertTrue(parse(command, "look"));
+	assertEquals(Command.Type.LOOK, command.getType());
+	assertFalse(command.isRegion());
+	assertFalse(command.isSince());
+
+	byte[] buffer = "look 0 0 1 1\nlook since 9223372036854775807\n".getBytes(StandardCharsets.US_ASCII);
+	assertTrue(command.parse(buffer, 13, buffer.length - 14));
+	assertTrue(command.isSince());
+	assertFalse(command.isRegion());
+	assertEquals(Long.MAX_VALUE, command.getVersion());
+    }
+
+    // help, bye, dig, flag, deflag, chord, compact on, compact off, batch on,
+    // batch off, largest and smallest int
+    @Test
+    public void testCommands() {
+	Command command = new Command();
+	assertTrue(parse(command, "help"));
+	assertEquals(Command.Type.HELP, command.getType());
+	assertTrue(parse(command, "bye"));
+	assertEquals(Command.Type.BYE, command.getType());
+
+	assertTrue(parse(command, "dig 2147483647 -2147483648"));
+	assertEquals(Command.Type.DIG, command.getType());
+	assertEquals(Integer.MAX_VALUE, command.getX());
+	assertEquals(Integer.MIN_VALUE, command.getY());
+
+	assertTrue(parse(command, "flag 0 5"));
+	assertEquals(Command.Type.FLAG, command.getType());
+	assertEquals(0, command.getX());
+	assertEquals(5, command.getY());
+
+	assertTrue(parse(command, "deflag -0 07"));
+	assertEquals(Command.Type.DEFLAG, command.getType());
+	assertEquals(0, command.getX());
+	assertEquals(7, command.getY());
+
+	assertTrue(parse(command, "chord 3 -1"));
+	assertEquals(Command.Type.CHORD, command.getType());
+	assertEquals(3, command.getX());
+	assertEquals(-1, command.getY());
+
+	assertTrue(parse(command, "compact on"));
+	assertEquals(Command.Type.COMPACT, command.getType());
+	assertTrue(command.isOn());
+	assertTrue(parse(command, "compact off"));
+	assertFalse(command.isOn());
+
+	assertTrue(parse(command, "batch on"));
+	assertEquals(Command.Type.BATCH, command.getType());
+	assertTrue(command.isOn());
+	assertTrue(parse(command, "batch off"));
+	assertEquals(Command.Type.BATCH, command.getType());
+	assertFalse(command.isOn());
+    }
+
+    // digs, flags, deflags, 1 tile, > 1 tiles, more tiles than held before,
+    // after a command with more tiles
+    @Test
+    public void testBulk() {
+	Command command = new Command();
+	assertTrue(parse(command, "digs 3 -4"));
+	assertEquals(Command.Type.DIGS, command.getType());
+	assertEquals(1, command.getPointCount());
+	assertEquals(3, command.getPointX(0));
+	assertEquals(-4, command.getPointY(0));
+
+	StringBuilder line = new StringBuilder("flags");
+	for (int point = 0; point < 40; point++) {
+	    line.append(' ').append(point).append(' ').append(100 - point);
+	}
+	assertTrue(parse(command, line.toString()));
+	assertEquals(Command.Type.FLAGS, command.getType());
+	assertEquals(40, command.getPointCount());
+	for (int point = 0; point < 40; point++) {
+	    assertEquals(point, command.getPointX(point));
+	    assertEquals(100 - point, command.getPointY(point));
+	}
+
+	assertTrue(parse(command, "deflags 1 2 2147483647 0"));
+	assertEquals(Command.Type.DEFLAGS, command.getType());
+	assertEquals(2, command.getPointCount());
+	assertEquals(Integer.MAX_VALUE, command.getPointX(1));
+	assertEquals(0, command.getPointY(1));
+
+	assertTrue(parse(command, "dig 1 2"));
+	assertEquals(Command.Type.DIG, command.getType());
+	assertEquals(0, command.getPointCount());
+    }
+
+    // not a command, too large for an int or a long
+    @Test
+    public void testInvalid() {
+	Command command = new Command();
+	String[] lines = { "", "look ", "look 1 2", "look 1 2 -3 4", "look since", "look since -1",
+		"look since 9223372036854775808", "help me", "Help", "bye bye", "dig", "dig 1", "dig 1  2", "dig 1 2 ",
+		"dig 2147483648 0", "flag 0 -2147483649", "deflag x 1", "dug 1 1", "compact", "compact yes",
+		"compact onn", "batch", "batch of", "batch on ", "digs", "digs 1", "digs 1 2 3", "digs 1 2 ",
+	"flags 1 2x", "deflags", "deflags 1 2 3 -", "digss 1 2", "chord", "chord 1", "chord 1 2 3", "chords 1 2",
+	"-", "1 1" };
+	for (String line : lines) {
+	    assertFalse(line, parse(command, line));
+	    assertEquals(line, Command.Type.INVALID, command.getType());
+	    assertFalse(line, command.isRegion());
+	    assertFalse(line, command.isSince());
+	    assertEquals(line, 0, command.getPointCount());
+	}
+    }
+
+    /**
+     * Decodes the given line into the given command.
+     * 
+     * @param command, a command
+     * @param line,    an ASCII line without line terminator
+     * @return true if the line is a command
+     */
+    private boolean parse(Command command, String line) {
+	byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+	return command.parse(bytes, 0, bytes.length);
+    }
+}
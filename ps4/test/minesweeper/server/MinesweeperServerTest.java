@@ -5,18 +5,27 @@ package minesweeper.server;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.ConnectException;
 import java.net.Socket;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Random;
 
+import minesweeper.server.MinesweeperServer.Limits;
+import minesweeper.server.MinesweeperServer.ServerSettings;
+
 import org.junit.Test;
 
 /**
@@ -29,6 +38,24 @@ public class MinesweeperServerTest {
     // Partition on Number of clients: one, more than one
     // Partition on type of board creation: randomly generated, parsed from file
     // Partition on type message sent by client: flag, deflag, dig, look, help, bye
+    // Partition on viewport of look: whole board, inside the board, partly
+    // outside the board
+    // Partition on version of look since: no longer remembered, current, earlier
+    // Partition on compact mode: off, on with no changed tile, on with one
+    // Partition on serving mode: thread per connection, event loops, virtual
+    // threads, pool of workers
+    // Partition on limits: under the limits, too many sessions, queue of the
+    // workers full
+    // Partition on acceptors: one, several
+    // Partition on settings: valid, event loops with virtual threads or workers
+    // Partition on replies: smaller than the send buffer of the socket, larger
+    // Partition on lines sent at once: one, a burst, a burst in batch mode, a
+    // burst with replies larger than a batch
+    // Partition on end of the connection: bye, client closes its side after a
+    // burst and a last line without line terminator, BOOM! at the end of a
+    // burst in batch mode with debug mode off
+    // Partition on tiles of a command: one, several in digs, flags, deflags, the
+    // neighbors of a tile in chord
     // Partition on type message sent by server: Board message, Boom message, Hello
     // message
 
@@ -47,6 +74,20 @@ public class MinesweeperServerTest {
      * @throws IOException if the board file cannot be found
      */
     private Thread startMinesweeperServer(String boardFile) throws IOException {
+	return startMinesweeperServer(boardFile, PORT);
+    }
+
+    /**
+     * Start a MinesweeperServer in debug mode with a board file from BOARDS_PKG on
+     * the given port, with the given extra options.
+     * 
+     * @param boardFile board to load
+     * @param port      port the server listens on
+     * @param options   more command line options of the server
+     * @return thread running the server
+     * @throws IOException if the board file cannot be found
+     */
+    private Thread startMinesweeperServer(String boardFile, int port, String... options) throws IOException {
 
 	final URL boardURL = ClassLoader.getSystemClassLoader().getResource(BOARDS_PKG + boardFile);
 	if (boardURL == null) {
@@ -58,8 +99,9 @@ public class MinesweeperServerTest {
 	} catch (URISyntaxException urise) {
 	    throw new IOException("Invalid URL " + boardURL, urise);
 	}
-	final String[] args = new String[] { "--debug", "--port", Integer.toString(PORT), "--file", boardPath };
-	Thread serverThread = new Thread(() -> MinesweeperServer.main(args));
+	final List<String> args = new ArrayList<>(List.of("--debug", "--port", Integer.toString(port), "--file", boardPath));
+	args.addAll(List.of(options));
+	Thread serverThread = new Thread(() -> MinesweeperServer.main(args.toArray(new String[0])));
 	serverThread.start();
 	return serverThread;
     }
@@ -72,11 +114,24 @@ public class MinesweeperServerTest {
      * @throws IOException if the connection fails
      */
     private Socket connectToMinesweeperServer(Thread server) throws IOException {
+	return connectToMinesweeperServer(server, PORT);
+    }
+
+    /**
+     * Connect to a MinesweeperServer on the given port and return the connected
+     * socket.
+     * 
+     * @param server abort connection attempts if the server thread dies
+     * @param port   port the server listens on
+     * @return socket connected to the server
+     * @throws IOException if the connection fails
+     */
+    private Socket connectToMinesweeperServer(Thread server, int port) throws IOException {
 	int attempts = 0;
 	while (true) {
 	    try {
 		System.out.println("Attempting to connect... Attempt #" + (attempts + 1));
-		Socket socket = new Socket(LOCALHOST, PORT);
+		Socket socket = new Socket(LOCALHOST, port);
 		socket.setSoTimeout(10000);
 		System.out.println("Connection successful.");
 		return socket;
@@ -268,6 +323,42 @@ public class MinesweeperServerTest {
 	assertEquals("1 F 1    ", inFromServerToClient5.readLine());
 	assertEquals("1 1 1    ", inFromServerToClient5.readLine());
 
+	outFromClient5ToServer.println("look 1 1 3 2");
+	assertEquals("  1 -", inFromServerToClient5.readLine());
+	assertEquals("  1 1", inFromServerToClient5.readLine());
+
+	outFromClient5ToServer.println("look 3 4 5 5");
+	assertEquals("   ", inFromServerToClient5.readLine());
+	assertEquals("   ", inFromServerToClient5.readLine());
+
+	outFromClient5ToServer.println("look since 999999");
+	String header = inFromServerToClient5.readLine();
+	assertTrue("expected BOARD message", header.startsWith("BOARD "));
+	long version = Long.parseLong(header.substring(6));
+	for (int row = 0; row < 6; row++) {
+	    inFromServerToClient5.readLine();
+	}
+	outFromClient5ToServer.println("look since " + version);
+	assertEquals("DELTA " + version + " 0", inFromServerToClient5.readLine());
+
+	outFromClient5ToServer.println("flag 3 1");
+	for (int row = 0; row < 6; row++) {
+	    inFromServerToClient5.readLine();
+	}
+	outFromClient5ToServer.println("look since " + version);
+	assertEquals("DELTA " + (version + 1) + " 1", inFromServerToClient5.readLine());
+	assertEquals("3 1 F", inFromServerToClient5.readLine());
+
+	outFromClient5ToServer.println("compact on");
+	assertEquals("Compact mode is on.", inFromServerToClient5.readLine());
+	outFromClient5ToServer.println("deflag 3 1");
+	assertEquals("CHANGES 1", inFromServerToClient5.readLine());
+	assertEquals("3 1 -", inFromServerToClient5.readLine());
+	outFromClient5ToServer.println("deflag 3 1");
+	assertEquals("CHANGES 0", inFromServerToClient5.readLine());
+	outFromClient5ToServer.println("compact off");
+	assertEquals("Compact mode is off.", inFromServerToClient5.readLine());
+
 	outFromClient1ToServer.println("bye");
 	socket1.close();
 
@@ -285,4 +376,423 @@ public class MinesweeperServerTest {
 
     }
 
+    // more than one clients on event loops, parsed from file,
+    // flag, dig, look, bye sent by client, a command split over two writes
+    // Board message, Boom message, Hello message
+    @Test(timeout = 10000)
+    public void eventLoopSimulation() throws IOException {
+
+	Thread thread = startMinesweeperServer("board_file_6.txt", PORT + 1, "--event-loops", "2");
+
+	Socket socket1 = connectToMinesweeperServer(thread, PORT + 1);
+	BufferedReader inFromServerToClient1 = new BufferedReader(new InputStreamReader(socket1.getInputStream()));
+	PrintWriter outFromClient1ToServer = new PrintWriter(socket1.getOutputStream(), true);
+
+	assertTrue("expected HELLO message", inFromServerToClient1.readLine().startsWith("Welcome"));
+
+	Socket socket2 = connectToMinesweeperServer(thread, PORT + 1);
+	BufferedReader inFromServerToClient2 = new BufferedReader(new InputStreamReader(socket2.getInputStream()));
+	PrintWriter outFromClient2ToServer = new PrintWriter(socket2.getOutputStream(), true);
+
+	assertTrue("expected HELLO message", inFromServerToClient2.readLine().startsWith("Welcome"));
+
+	outFromClient1ToServer.print("fla");
+	outFromClient1ToServer.flush();
+	outFromClient1ToServer.println("g 0 0");
+	assertEquals("F - - - -", inFromServerToClient1.readLine());
+	for (int row = 1; row < 6; row++) {
+	    assertEquals("- - - - -", inFromServerToClient1.readLine());
+	}
+
+	outFromClient2ToServer.println("dig 4 5");
+	assertEquals("BOOM!", inFromServerToClient2.readLine());
+
+	outFromClient2ToServer.println("look 2 2 3 4");
+	assertEquals("- 2 1", inFromServerToClient2.readLine());
+	assertEquals("2 1  ", inFromServerToClient2.readLine());
+	assertEquals("1    ", inFromServerToClient2.readLine());
+	assertEquals("1    ", inFromServerToClient2.readLine());
+
+	outFromClient1ToServer.println("bye");
+	assertEquals(null, inFromServerToClient1.readLine());
+	socket1.close();
+
+	outFromClient2ToServer.println("bye");
+	assertEquals(null, inFromServerToClient2.readLine());
+	socket2.close();
+
+    }
+
+    // many clients connected at once on virtual threads, parsed from file,
+    // look, bye sent by client
+    // Board message, Hello message
+    @Test(timeout = 30000)
+    public void virtualThreadClients() throws IOException {
+
+	Thread thread = startMinesweeperServer("board_file_6.txt", PORT + 2, "--virtual-threads");
+
+	List<Socket> sockets = new ArrayList<>();
+	for (int client = 0; client < 500; client++) {
+	    Socket socket = connectToMinesweeperServer(thread, PORT + 2);
+	    sockets.add(socket);
+	    BufferedReader inFromServerToClient = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+	    assertTrue("expected HELLO message", inFromServerToClient.readLine().startsWith("Welcome"));
+	}
+
+	for (Socket socket : sockets) {
+	    BufferedReader inFromServerToClient = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+	    PrintWriter outFromClientToServer = new PrintWriter(socket.getOutputStream(), true);
+	    outFromClientToServer.println("look");
+	    for (int row = 0; row < 6; row++) {
+		assertEquals("- - - - -", inFromServerToClient.readLine());
+	    }
+	    outFromClientToServer.println("bye");
+	    assertEquals(null, inFromServerToClient.readLine());
+	    socket.close();
+	}
+
+    }
+
+    // more than one clients, over the session limit and over the queue of the
+    // workers, parsed from file,
+    // look, bye sent by client
+    // Busy message, Hello message
+    @Test(timeout = 10000)
+    public void busyServer() throws IOException {
+
+	Thread sessionLimited = startMinesweeperServer("board_file_6.txt", PORT + 3, "--max-sessions", "1");
+
+	Socket socket1 = connectToMinesweeperServer(sessionLimited, PORT + 3);
+	BufferedReader inFromServerToClient1 = new BufferedReader(new InputStreamReader(socket1.getInputStream()));
+	PrintWriter outFromClient1ToServer = new PrintWriter(socket1.getOutputStream(), true);
+	assertTrue("expected HELLO message", inFromServerToClient1.readLine().startsWith("Welcome"));
+
+	Socket socket2 = connectToMinesweeperServer(sessionLimited, PORT + 3);
+	BufferedReader inFromServerToClient2 = new BufferedReader(new InputStreamReader(socket2.getInputStream()));
+	assertEquals("Server busy, try again later.", inFromServerToClient2.readLine());
+	assertEquals(null, inFromServerToClient2.readLine());
+	socket2.close();
+
+	outFromClient1ToServer.println("bye");
+	assertEquals(null, inFromServerToClient1.readLine());
+	socket1.close();
+
+	Socket socket3 = connectToMinesweeperServer(sessionLimited, PORT + 3);
+	BufferedReader inFromServerToClient3 = new BufferedReader(new InputStreamReader(socket3.getInputStream()));
+	PrintWriter outFromClient3ToServer = new PrintWriter(socket3.getOutputStream(), true);
+	assertTrue("expected HELLO message", inFromServerToClient3.readLine().startsWith("Welcome"));
+	outFromClient3ToServer.println("bye");
+	socket3.close();
+
+	Thread queueLimited = startMinesweeperServer("board_file_6.txt", PORT + 4, "--workers", "1", "--queue", "1");
+
+	Socket socket4 = connectToMinesweeperServer(queueLimited, PORT + 4);
+	BufferedReader inFromServerToClient4 = new BufferedReader(new InputStreamReader(socket4.getInputStream()));
+	PrintWriter outFromClient4ToServer = new PrintWriter(socket4.getOutputStream(), true);
+	assertTrue("expected HELLO message", inFromServerToClient4.readLine().startsWith("Welcome"));
+
+	Socket socket5 = connectToMinesweeperServer(queueLimited, PORT + 4);
+	BufferedReader inFromServerToClient5 = new BufferedReader(new InputStreamReader(socket5.getInputStream()));
+	PrintWriter outFromClient5ToServer = new PrintWriter(socket5.getOutputStream(), true);
+
+	Socket socket6 = connectToMinesweeperServer(queueLimited, PORT + 4);
+	BufferedReader inFromServerToClient6 = new BufferedReader(new InputStreamReader(socket6.getInputStream()));
+	assertEquals("Server busy, try again later.", inFromServerToClient6.readLine());
+	socket6.close();
+
+	outFromClient4ToServer.println("bye");
+	socket4.close();
+
+	assertTrue("expected HELLO message", inFromServerToClient5.readLine().startsWith("Welcome"));
+	outFromClient5ToServer.println("look");
+	for (int row = 0; row < 6; row++) {
+	    assertEquals("- - - - -", inFromServerToClient5.readLine());
+	}
+	outFromClient5ToServer.println("bye");
+	socket5.close();
+
+    }
+
+    // more than one clients on several acceptors, with a thread per connection
+    // and with event loops, parsed from file,
+    // look, bye sent by client
+    // Board message, Hello message
+    @Test(timeout = 10000)
+    public void multipleAcceptors() throws IOException {
+
+	Thread threadServer = startMinesweeperServer("board_file_6.txt", PORT + 5, "--acceptors", "3");
+	Thread eventLoopServer = startMinesweeperServer("board_file_6.txt", PORT + 6, "--acceptors", "3", "--event-loops",
+		"2");
+
+	for (int client = 0; client < 40; client++) {
+	    Socket socket = client % 2 == 0 ? connectToMinesweeperServer(threadServer, PORT + 5)
+		    : connectToMinesweeperServer(eventLoopServer, PORT + 6);
+	    BufferedReader inFromServerToClient = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+	    PrintWriter outFromClientToServer = new PrintWriter(socket.getOutputStream(), true);
+	    assertTrue("expected HELLO message", inFromServerToClient.readLine().startsWith("Welcome"));
+	    outFromClientToServer.println("look 0 0 5 1");
+	    assertEquals("- - - - -", inFromServerToClient.readLine());
+	    outFromClientToServer.println("bye");
+	    socket.close();
+	}
+
+    }
+
+    // more than one clients, with a thread per connection and with event loops,
+    // randomly generated, boards larger than the send buffer of the socket
+    // look, bye sent by client
+    // Board message, Hello message
+    @Test(timeout = 10000)
+    public void largeBoards() throws IOException {
+
+	Thread threadServer = startMinesweeperServer("board_file_6.txt", PORT + 7, "--size", "300,200",
+		"--send-buffer", "4096", "--no-tcp-nodelay");
+	Thread eventLoopServer = startMinesweeperServer("board_file_6.txt", PORT + 8, "--size", "300,200",
+		"--send-buffer", "4096", "--receive-buffer", "4096", "--event-loops", "1");
+
+	String row = String.join(" ", Collections.nCopies(300, "-"));
+	for (int client = 0; client < 4; client++) {
+	    Socket socket = client % 2 == 0 ? connectToMinesweeperServer(threadServer, PORT + 7)
+		    : connectToMinesweeperServer(eventLoopServer, PORT + 8);
+	    BufferedReader inFromServerToClient = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+	    PrintWriter outFromClientToServer = new PrintWriter(socket.getOutputStream(), true);
+	    assertTrue("expected HELLO message", inFromServerToClient.readLine().startsWith("Welcome"));
+	    outFromClientToServer.println("look");
+	    outFromClientToServer.println("help");
+	    for (int y = 0; y < 200; y++) {
+		assertEquals(row, inFromServerToClient.readLine());
+	    }
+	    assertTrue("expected HELP message", inFromServerToClient.readLine().contains("look since v"));
+	    outFromClientToServer.println("bye");
+	    socket.close();
+	}
+
+    }
+
+    // one client sending bursts of lines, with a thread per connection and with
+    // event loops, parsed from file,
+    // flag, deflag, look, help, batch on, batch off, bye sent by client
+    // Board message, Hello message
+    @Test(timeout = 10000)
+    public void pipelinedBursts() throws IOException {
+
+	Thread threadServer = startMinesweeperServer("board_file_6.txt", PORT + 9);
+	Thread eventLoopServer = startMinesweeperServer("board_file_6.txt", PORT + 10, "--event-loops", "1");
+
+	for (int server = 0; server < 2; server++) {
+	    Socket socket = server == 0 ? connectToMinesweeperServer(threadServer, PORT + 9)
+		    : connectToMinesweeperServer(eventLoopServer, PORT + 10);
+	    BufferedReader inFromServerToClient = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+	    OutputStream outFromClientToServer = socket.getOutputStream();
+	    assertTrue("expected HELLO message", inFromServerToClient.readLine().startsWith("Welcome"));
+
+	    // every line of a burst is answered in order
+	    outFromClientToServer.write("flag 0 1\nlook 0 1 2 1\n".getBytes(StandardCharsets.US_ASCII));
+	    assertEquals("- - - - -", inFromServerToClient.readLine());
+	    assertEquals("F - - - -", inFromServerToClient.readLine());
+	    for (int y = 2; y < 6; y++) {
+		assertEquals("- - - - -", inFromServerToClient.readLine());
+	    }
+	    assertEquals("F -", inFromServerToClient.readLine());
+
+	    // in batch mode, the board is only sent once, after the other replies
+	    outFromClientToServer.write(
+		    "batch on\ndeflag 0 1\nflag 1 1\nlook\nflag 2 1\nhelp\n".getBytes(StandardCharsets.US_ASCII));
+	    assertEquals("Batch mode is on.", inFromServerToClient.readLine());
+	    assertTrue("expected HELP message", inFromServerToClient.readLine().contains("batch on, batch off"));
+	    assertEquals("- - - - -", inFromServerToClient.readLine());
+	    assertEquals("- F F - -", inFromServerToClient.readLine());
+	    for (int y = 2; y < 6; y++) {
+		assertEquals("- - - - -", inFromServerToClient.readLine());
+	    }
+
+	    outFromClientToServer.write("batch off\nlook 1 1 1 1\nbye\n".getBytes(StandardCharsets.US_ASCII));
+	    assertEquals("Batch mode is off.", inFromServerToClient.readLine());
+	    assertEquals("F", inFromServerToClient.readLine());
+	    assertEquals(null, inFromServerToClient.readLine());
+	    socket.close();
+	}
+
+    }
+
+    // one client sending digs, flags and deflags of several tiles and chords,
+    // parsed from file, compact mode off and on
+    // Board message, Boom message, Hello message
+    @Test(timeout = 10000)
+    public void bulkCommands() throws IOException {
+
+	Thread thread = startMinesweeperServer("board_file_6.txt", PORT + 11);
+
+	Socket socket = connectToMinesweeperServer(thread, PORT + 11);
+	BufferedReader inFromServerToClient = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+	PrintWriter outFromClientToServer = new PrintWriter(socket.getOutputStream(), true);
+	assertTrue("expected HELLO message", inFromServerToClient.readLine().startsWith("Welcome"));
+
+	// all the tiles of a command get a single board
+	outFromClientToServer.println("flags 0 1 1 1 0 1");
+	assertEquals("- - - - -", inFromServerToClient.readLine());
+	assertEquals("F F - - -", inFromServerToClient.readLine());
+	for (int y = 2; y < 6; y++) {
+	    assertEquals("- - - - -", inFromServerToClient.readLine());
+	}
+
+	outFromClientToServer.println("digs 1");
+	assertTrue("expected HELP message", inFromServerToClient.readLine().contains("digs x y ..."));
+
+	// in compact mode, the tiles changed by all of them together
+	outFromClientToServer.println("compact on");
+	assertEquals("Compact mode is on.", inFromServerToClient.readLine());
+	outFromClientToServer.println("deflags 1 1 0 1 9 9");
+	assertEquals("CHANGES 2", inFromServerToClient.readLine());
+	assertEquals("0 1 -", inFromServerToClient.readLine());
+	assertEquals("1 1 -", inFromServerToClient.readLine());
+	outFromClientToServer.println("digs 4 1 4 0 4 1");
+	assertEquals("CHANGES 2", inFromServerToClient.readLine());
+	assertEquals("4 0 1", inFromServerToClient.readLine());
+	assertEquals("4 1 1", inFromServerToClient.readLine());
+
+	// a chord digs the neighbors once the flags around the tile match its count
+	outFromClientToServer.println("chord 4 0");
+	assertEquals("CHANGES 0", inFromServerToClient.readLine());
+	outFromClientToServer.println("flag 3 1");
+	assertEquals("CHANGES 1", inFromServerToClient.readLine());
+	assertEquals("3 1 F", inFromServerToClient.readLine());
+	outFromClientToServer.println("chord 4 0");
+	assertEquals("CHANGES 1", inFromServerToClient.readLine());
+	assertEquals("3 0 1", inFromServerToClient.readLine());
+
+	// a bomb in any of the digs is a BOOM
+	outFromClientToServer.println("digs 4 2 1 4");
+	assertEquals("BOOM!", inFromServerToClient.readLine());
+
+	outFromClientToServer.println("bye");
+	assertEquals(null, inFromServerToClient.readLine());
+	socket.close();
+    }
+
+    // one client sending a burst larger than the input buffer of an event loop
+    // connection then closing its side, parsed from file,
+    // help, flag, look sent by client, the last line without line terminator
+    // Board message, Hello message
+    @Test(timeout = 10000)
+    public void halfClosedEventLoop() throws IOException {
+
+	Thread thread = startMinesweeperServer("board_file_6.txt", PORT + 12, "--event-loops", "1");
+
+	Socket socket = connectToMinesweeperServer(thread, PORT + 12);
+	BufferedReader inFromServerToClient = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+	OutputStream outFromClientToServer = socket.getOutputStream();
+	assertTrue("expected HELLO message", inFromServerToClient.readLine().startsWith("Welcome"));
+
+	// every line is answered before the connection is closed
+	String burst = String.join("", Collections.nCopies(300, "help\n")) + "flag 1 1\nlook 1 1 1 1";
+	outFromClientToServer.write(burst.getBytes(StandardCharsets.US_ASCII));
+	socket.shutdownOutput();
+	for (int line = 0; line < 300; line++) {
+	    assertTrue("expected HELP message", inFromServerToClient.readLine().contains("look since v"));
+	}
+	assertEquals("- - - - -", inFromServerToClient.readLine());
+	assertEquals("- F - - -", inFromServerToClient.readLine());
+	for (int y = 2; y < 6; y++) {
+	    assertEquals("- - - - -", inFromServerToClient.readLine());
+	}
+	assertEquals("F", inFromServerToClient.readLine());
+	assertEquals(null, inFromServerToClient.readLine());
+	socket.close();
+    }
+
+    // one client pipelining a burst of lines whose replies are larger than a
+    // batch, with a thread per connection and with event loops, another client
+    // served meanwhile, randomly generated,
+    // look, help, bye sent by client
+    // Board message, Hello message
+    @Test(timeout = 10000)
+    public void largeBursts() throws IOException {
+
+	Thread threadServer = startMinesweeperServer("board_file_6.txt", PORT + 13, "--size", "300,200");
+	Thread eventLoopServer = startMinesweeperServer("board_file_6.txt", PORT + 14, "--size", "300,200",
+		"--event-loops", "1");
+
+	String row = String.join(" ", Collections.nCopies(300, "-"));
+	for (int server = 0; server < 2; server++) {
+	    Socket socket = server == 0 ? connectToMinesweeperServer(threadServer, PORT + 13)
+		    : connectToMinesweeperServer(eventLoopServer, PORT + 14);
+	    BufferedReader inFromServerToClient = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+	    OutputStream outFromClientToServer = socket.getOutputStream();
+	    assertTrue("expected HELLO message", inFromServerToClient.readLine().startsWith("Welcome"));
+
+	    String burst = String.join("", Collections.nCopies(20, "look\n")) + "help\n";
+	    outFromClientToServer.write(burst.getBytes(StandardCharsets.US_ASCII));
+
+	    // the other client is answered while the replies to the burst wait
+	    Socket other = server == 0 ? connectToMinesweeperServer(threadServer, PORT + 13)
+		    : connectToMinesweeperServer(eventLoopServer, PORT + 14);
+	    BufferedReader inFromServerToOther = new BufferedReader(new InputStreamReader(other.getInputStream()));
+	    PrintWriter outFromOtherToServer = new PrintWriter(other.getOutputStream(), true);
+	    assertTrue("expected HELLO message", inFromServerToOther.readLine().startsWith("Welcome"));
+	    outFromOtherToServer.println("bye");
+	    assertEquals(null, inFromServerToOther.readLine());
+	    other.close();
+
+	    // every line of the burst is answered in order
+	    for (int look = 0; look < 20; look++) {
+		for (int y = 0; y < 200; y++) {
+		    assertEquals(row, inFromServerToClient.readLine());
+		}
+	    }
+	    assertTrue("expected HELP message", inFromServerToClient.readLine().contains("look since v"));
+	    outFromClientToServer.write("bye\n".getBytes(StandardCharsets.US_ASCII));
+	    assertEquals(null, inFromServerToClient.readLine());
+	    socket.close();
+	}
+
+    }
+
+    // one client ending a burst in batch mode on a bomb, debug mode off, with a
+    // thread per connection and with event loops, parsed from file,
+    // batch on, flag, dig sent by client
+    // Boom message, Hello message
+    @Test(timeout = 10000)
+    public void boomEndsBatch() throws IOException {
+
+	Thread threadServer = startMinesweeperServer("board_file_6.txt", PORT + 15, "--no-debug");
+	Thread eventLoopServer = startMinesweeperServer("board_file_6.txt", PORT + 16, "--no-debug",
+		"--event-loops", "1");
+
+	for (int server = 0; server < 2; server++) {
+	    Socket socket = server == 0 ? connectToMinesweeperServer(threadServer, PORT + 15)
+		    : connectToMinesweeperServer(eventLoopServer, PORT + 16);
+	    BufferedReader inFromServerToClient = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+	    OutputStream outFromClientToServer = socket.getOutputStream();
+	    assertTrue("expected HELLO message", inFromServerToClient.readLine().startsWith("Welcome"));
+
+	    // BOOM! is the last reply, the board of the flag is not sent after it
+	    outFromClientToServer.write("batch on\nflag 0 1\ndig 4 5\n".getBytes(StandardCharsets.US_ASCII));
+	    assertEquals("Batch mode is on.", inFromServerToClient.readLine());
+	    assertEquals("BOOM!", inFromServerToClient.readLine());
+	    assertEquals(null, inFromServerToClient.readLine());
+	    socket.close();
+	}
+
+    }
+
+    // settings with event loops and virtual threads, with event loops and
+    // workers, valid settings
+    @Test
+    public void exclusiveSettings() {
+	ServerSettings loops = ServerSettings.DEFAULT.withEventLoops(2).withAcceptors(3);
+	assertEquals(2, loops.getEventLoops());
+	assertEquals(3, loops.getAcceptors());
+	try {
+	    loops.withVirtualThreads(true);
+	    fail("expected IllegalArgumentException");
+	} catch (IllegalArgumentException expected) {
+	}
+	try {
+	    loops.withLimits(new Limits(0, 0, 4, 0));
+	    fail("expected IllegalArgumentException");
+	} catch (IllegalArgumentException expected) {
+	}
+    }
+
 }
@@ -0,0 +1,140 @@
+/* Copyright (c) 2007-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Test;
+
+import minesweeper.server.ServerLog.Level;
+
+/**
+ * Tests for the log of the server.
+ */
+public class ServerLogTest {
+
+    // Testing strategy for shouldLog()
+    // Partition on level of the log: off, error, info, debug.
+    // Partition on level of the message: more severe than the log, same, less
+    // severe.
+    // Partition on sampling: 1, > 1.
+    //
+    // Testing strategy for log() and close()
+    // Partition on destination: file, rolled file.
+    // Partition on ring: room left, full so messages are dropped.
+    // Partition on message: with an exception, without.
+    // Partition on closing: once, again from another thread.
+
+    @Test(expected = AssertionError.class)
+    public void testAssertionsEnabled() {
+	assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // off, error, info, more severe, same, less severe, sampling 1
+    @Test
+    public void testLevels() throws IOException {
+	assertFalse(ServerLog.NONE.shouldLog(Level.ERROR));
+	ServerLog.NONE.log(Level.ERROR, "never written");
+
+	try (ServerLog log = new ServerLog(Level.INFO, 1, Optional.empty())) {
+	    assertTrue(log.shouldLog(Level.ERROR));
+	    assertTrue(log.shouldLog(Level.INFO));
+	    assertFalse(log.shouldLog(Level.DEBUG));
+	}
+	try (ServerLog log = new ServerLog(Level.ERROR, 1, Optional.empty())) {
+	    assertTrue(log.shouldLog(Level.ERROR));
+	    assertFalse(log.shouldLog(Level.INFO));
+	}
+    }
+
+    // debug, sampling > 1
+    @Test
+    public void testSampling() throws IOException {
+	try (ServerLog log = new ServerLog(Level.DEBUG, 4, Optional.empty())) {
+	    int sampled = 0;
+	    for (int message = 0; message < 10000; message++) {
+		if (log.shouldLog(Level.DEBUG)) {
+		    sampled++;
+		}
+	    }
+	    assertTrue("expected about 2500 messages, got " + sampled, sampled > 1500 && sampled < 3500);
+	    assertTrue(log.shouldLog(Level.INFO));
+	}
+    }
+
+    // file, rolled file, room left, with an exception, without
+    @Test
+    public void testRollingFile() throws IOException {
+	File file = File.createTempFile("server", ".log");
+	file.deleteOnExit();
+	try (ServerLog log = new ServerLog(Level.INFO, 1, Optional.of(file), 200, 2, 100)) {
+	    for (int message = 0; message < 20; message++) {
+		log.log(Level.INFO, "message " + message);
+		log.log(Level.DEBUG, "debug " + message);
+	    }
+	    log.log(Level.ERROR, "failed", new IOException("broken pipe"));
+	}
+	File first = new File(file.getPath() + ".1");
+	File second = new File(file.getPath() + ".2");
+	first.deleteOnExit();
+	second.deleteOnExit();
+	assertTrue(first.isFile());
+	assertTrue(second.isFile());
+	assertFalse(new File(file.getPath() + ".3").exists());
+
+	String latest = Files.readString(file.toPath(), StandardCharsets.UTF_8);
+	assertTrue(latest, latest.contains(" ERROR [main] failed"));
+	assertTrue(latest, latest.contains("java.io.IOException: broken pipe"));
+	assertTrue(Files.readString(first.toPath(), StandardCharsets.UTF_8).contains(" INFO [main] message "));
+	assertFalse(Files.readString(second.toPath(), StandardCharsets.UTF_8).contains("debug"));
+    }
+
+    // file, room left, closing again from another thread
+    @Test(timeout = 10000)
+    public void testCloseTwice() throws IOException, InterruptedException {
+	File file = File.createTempFile("server", ".log");
+	file.deleteOnExit();
+	ServerLog log = new ServerLog(Level.INFO, 1, Optional.of(file), Long.MAX_VALUE, 0, 1);
+	log.log(Level.INFO, "last words");
+	Thread hook = new Thread(() -> {
+	    try {
+		log.close();
+	    } catch (IOException ioe) {
+		throw new AssertionError(ioe);
+	    }
+	});
+	hook.start();
+	log.close();
+	hook.join();
+	log.close();
+	List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+	assertEquals(1, lines.size());
+	// JUnit may run a test with a timeout on a thread of its own
+	assertTrue(lines.get(0).endsWith(" INFO [" + Thread.currentThread().getName() + "] last words"));
+    }
+
+    // file, full so messages are dropped
+    @Test
+    public void testDropped() throws IOException {
+	File file = File.createTempFile("server", ".log");
+	file.deleteOnExit();
+	ServerLog log = new ServerLog(Level.DEBUG, 1, Optional.of(file), Long.MAX_VALUE, 0, 1);
+	for (int message = 0; message < 10000; message++) {
+	    log.log(Level.DEBUG, "message " + message);
+	}
+	log.close();
+	List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+	assertEquals(10000, lines.size() + log.getDropped());
+	assertTrue(lines.get(0).endsWith(" DEBUG [main] message 0"));
+    }
+}
@@ -0,0 +1,161 @@
+/* Copyright (c) 2007-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests for the output of client connections.
+ */
+public class SocketWriterTest {
+
+    // Testing strategy
+    // Partition on destination: blocking stream, non-blocking channel.
+    // Partition on bytes collected: none, fitting the first buffer, larger than
+    // it.
+    // Partition on how they are collected: write, writeNumber, reserve and
+    // commit.
+    // Partition on numbers: zero, positive, negative, smallest long.
+    // Partition on channel: takes everything, takes part of it.
+    // Partition on buffer released to the pool: small, grown past the largest
+    // pooled size.
+
+    @Test(expected = AssertionError.class)
+    public void testAssertionsEnabled() {
+	assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // blocking stream, none, fitting, write, writeNumber, reserve and commit,
+    // zero, positive, negative, smallest long
+    @Test
+    public void testFlush() throws IOException {
+	CountingStream out = new CountingStream();
+	SocketWriter writer = new SocketWriter(out);
+	writer.flush();
+	assertEquals(0, out.writes);
+
+	writer.write("DELTA ".getBytes(StandardCharsets.US_ASCII));
+	writer.writeNumber(0);
+	writer.write(' ');
+	writer.writeNumber(42);
+	writer.write(' ');
+	writer.writeNumber(-7);
+	writer.write(' ');
+	writer.writeNumber(Long.MIN_VALUE);
+	writer.write('\n');
+	byte[] buffer = writer.reserve(3);
+	buffer[writer.size()] = 'a';
+	buffer[writer.size() + 1] = 'b';
+	writer.commit(2);
+	assertFalse(writer.isEmpty());
+	writer.flush();
+	assertTrue(writer.isEmpty());
+	assertEquals(1, out.writes);
+	assertEquals("DELTA 0 42 -7 -9223372036854775808\nab", out.toString(StandardCharsets.US_ASCII.name()));
+    }
+
+    // blocking stream, larger than the first buffer
+    @Test
+    public void testLargeReply() throws IOException {
+	CountingStream out = new CountingStream();
+	SocketWriter writer = new SocketWriter(out);
+	byte[] board = new byte[100_000];
+	Arrays.fill(board, (byte) '-');
+	writer.write('[');
+	writer.write(board);
+	writer.write(']');
+	writer.flush();
+	assertEquals(1, out.writes);
+	assertEquals(board.length + 2, out.size());
+    }
+
+    // blocking stream, larger than the largest pooled size - the grown buffer is
+    // not handed to the next writers
+    @Test
+    public void testGrownBufferDropped() throws IOException {
+	SocketWriter writer = new SocketWriter(new CountingStream());
+	byte[] huge = writer.reserve(4 * SocketWriter.MAXIMUM_POOLED_SIZE);
+	writer.commit(huge.length);
+	writer.flush();
+	for (int next = 0; next < 2000; next++) {
+	    SocketWriter other = new SocketWriter(new CountingStream());
+	    byte[] buffer = other.reserve(1);
+	    assertTrue(buffer != huge);
+	    assertTrue(buffer.length <= SocketWriter.MAXIMUM_POOLED_SIZE);
+	    other.close();
+	}
+    }
+
+    // non-blocking channel, takes part of it, takes everything
+    @Test
+    public void testWriteTo() throws IOException {
+	TrickleChannel channel = new TrickleChannel(5);
+	SocketWriter writer = new SocketWriter();
+	assertTrue(writer.writeTo(channel));
+	writer.write("first\n".getBytes(StandardCharsets.US_ASCII));
+	assertFalse(writer.writeTo(channel));
+	writer.write("second\n".getBytes(StandardCharsets.US_ASCII));
+	while (!writer.writeTo(channel)) {
+	}
+	assertEquals("first\nsecond\n", channel.taken.toString(StandardCharsets.US_ASCII.name()));
+	assertEquals(3, channel.writes);
+    }
+
+    /**
+     * Stream counting the writes it gets.
+     */
+    private static final class CountingStream extends ByteArrayOutputStream {
+	private int writes;
+
+	@Override
+	public synchronized void write(byte[] bytes, int offset, int length) {
+	    writes++;
+	    super.write(bytes, offset, length);
+	}
+    }
+
+    /**
+     * Channel taking at most a given number of bytes per write, like a client
+     * reading slowly.
+     */
+    private static final class TrickleChannel implements WritableByteChannel {
+	private final int limit;
+	private final ByteArrayOutputStream taken = new ByteArrayOutputStream();
+	private int writes;
+
+	private TrickleChannel(int limit) {
+	    this.limit = limit;
+	}
+
+	@Override
+	public int write(ByteBuffer source) {
+	    writes++;
+	    int length = Math.min(limit, source.remaining());
+	    for (int index = 0; index < length; index++) {
+		taken.write(source.get());
+	    }
+	    return length;
+	}
+
+	@Override
+	public boolean isOpen() {
+	    return true;
+	}
+
+	@Override
+	public void close() {
+	}
+    }
+}